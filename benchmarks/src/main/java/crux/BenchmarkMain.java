@@ -0,0 +1,32 @@
+package crux;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/* Runs the benchmarks like the usual JMH main, taking the same arguments,
+ * but with the gc profiler on and the results written as JSON to
+ * jmh-result.json unless the arguments say otherwise.
+ */
+public class BenchmarkMain {
+
+    public static final String RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException
+    {
+        CommandLineOptions arguments = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(arguments);
+        if (arguments.getProfilers().isEmpty())
+            options.addProfiler(GCProfiler.class);
+        if (!arguments.getResultFormat().hasValue())
+            options.resultFormat(ResultFormatType.JSON);
+        if (!arguments.getResult().hasValue())
+            options.result(RESULT_FILE);
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,156 @@
+package crux;
+
+import java.io.StringReader;
+import java.util.Random;
+
+/* Synthetic Crux sources for the benchmarks.
+ *
+ * Every corpus holds exactly TOKENS tokens, not counting the EOF, so that a
+ * benchmark scanning one corpus per invocation can report its throughput and
+ * allocation per token. The text is generated from a fixed seed and is the
+ * same on every run.
+ */
+public final class Corpus {
+
+    public static final int TOKENS = 100000;
+
+    private static final long SEED = 142;
+    private static final int TOKENS_PER_LINE = 8;
+
+    public enum Shape {
+        IDENTIFIERS,
+        OPERATORS,
+        COMMENTS,
+        NUMBERS,
+        LONG_LINES
+    }
+
+    private final Random random = new Random(SEED);
+    private final StringBuilder text = new StringBuilder();
+    private int tokens;
+
+    private Corpus()
+    {
+    }
+
+    public static String generate(Shape shape)
+    {
+        Corpus corpus = new Corpus();
+        switch (shape) {
+            case IDENTIFIERS:
+                corpus.identifiers();
+                break;
+            case OPERATORS:
+                corpus.operators();
+                break;
+            case COMMENTS:
+                corpus.comments();
+                break;
+            case NUMBERS:
+                corpus.numbers();
+                break;
+            case LONG_LINES:
+                corpus.longLines();
+                break;
+        }
+        return corpus.text.toString();
+    }
+
+    // Returns the number of tokens the Scanner finds in text, EOF excluded
+    public static int countTokens(String text)
+    {
+        TokenBuffer tokens = new Scanner(new StringReader(text)).tokenize();
+        return tokens.size() - 1;
+    }
+
+    private void token(String lexeme)
+    {
+        text.append(lexeme);
+        tokens++;
+        if (tokens % TOKENS_PER_LINE == 0)
+            text.append('\n').append("    ");
+        else
+            text.append(' ');
+    }
+
+    private String identifier(int minLength, int maxLength)
+    {
+        String first = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ_";
+        String rest = first + "0123456789";
+        int length = minLength + random.nextInt(maxLength - minLength + 1);
+        StringBuilder name = new StringBuilder(length);
+        name.append(first.charAt(random.nextInt(first.length())));
+        while (name.length() < length)
+            name.append(rest.charAt(random.nextInt(rest.length())));
+        return name.toString();
+    }
+
+    // mostly long names, with a keyword now and then
+    private void identifiers()
+    {
+        while (tokens < TOKENS) {
+            if (random.nextInt(8) == 0)
+                token(Token.Kind.KEYWORDS[random.nextInt(Token.Kind.KEYWORDS.length)].defaultLexeme());
+            else
+                token(identifier(3, 16));
+        }
+    }
+
+    // every operator and punctuation lexeme, with a one letter operand now and then
+    private void operators()
+    {
+        while (tokens < TOKENS) {
+            if (random.nextInt(10) == 0)
+                token(identifier(1, 1));
+            else
+                token(Token.Kind.SPECIAL_CHARS[random.nextInt(Token.Kind.SPECIAL_CHARS.length)].defaultLexeme());
+        }
+    }
+
+    // indented comment lines between short statements
+    private void comments()
+    {
+        while (tokens < TOKENS) {
+            int lines = 1 + random.nextInt(3);
+            for (int i = 0; i < lines; i++) {
+                text.append("        // ");
+                int words = 4 + random.nextInt(10);
+                for (int w = 0; w < words; w++)
+                    text.append(identifier(2, 9)).append(' ');
+                text.append('\n');
+            }
+            text.append("        ");
+            String[] statement = { "let", identifier(1, 6), "=", identifier(1, 6), "+", "1", ";" };
+            for (int i = 0; i < statement.length && tokens < TOKENS; i++) {
+                text.append(statement[i]).append(' ');
+                tokens++;
+            }
+            text.append('\n');
+        }
+    }
+
+    // integers and floats of every length an int or a float holds
+    private void numbers()
+    {
+        while (tokens < TOKENS) {
+            int digits = 1 + random.nextInt(9);
+            String integer = Integer.toString(random.nextInt((int) Math.pow(10, digits)));
+            if (random.nextBoolean())
+                token(integer);
+            else
+                token(integer + "." + random.nextInt(1000000));
+        }
+    }
+
+    // statements on a single line without a newline anywhere
+    private void longLines()
+    {
+        while (tokens < TOKENS) {
+            String[] statement = { "let", identifier(1, 8), "=", identifier(1, 8), "*", "(", identifier(1, 8), "+", "42", ")", ";" };
+            for (int i = 0; i < statement.length && tokens < TOKENS; i++) {
+                text.append(statement[i]).append(' ');
+                tokens++;
+            }
+        }
+    }
+}
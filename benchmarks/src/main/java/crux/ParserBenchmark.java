@@ -0,0 +1,55 @@
+package crux;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Parser throughput over the synthetic programs.
+ *
+ * The program is scanned into a TokenBuffer once, so only parsing is
+ * measured. One invocation parses the whole program of Programs.NODES
+ * nodes, and counts as that many operations: the score is nodes per
+ * second, and with the gc profiler gc.alloc.rate.norm is the bytes
+ * allocated per node.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(Programs.NODES)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"DEEP_NESTING", "LONG_EXPRESSIONS", "SMALL_FUNCTIONS", "GLOBAL_DECLARATIONS"})
+    public Programs.Shape program;
+
+    private TokenBuffer tokens;
+
+    @Setup
+    public void generate()
+    {
+        String text = Programs.generate(program);
+        int nodes = Programs.countNodes(text);
+        if (nodes != Programs.NODES)
+            throw new IllegalStateException("The " + program + " program has " + nodes + " nodes instead of " + Programs.NODES + ".");
+        tokens = Programs.tokenize(text);
+    }
+
+    @Benchmark
+    public ast.Command parse()
+    {
+        return new Parser(tokens).parse();
+    }
+}
@@ -0,0 +1,183 @@
+package crux;
+
+import java.io.StringReader;
+import java.util.Random;
+
+import ast.FlatTree;
+
+/* Synthetic Crux programs for the Parser and TypeChecker benchmarks.
+ *
+ * Every program parses and type-checks without errors into exactly NODES
+ * nodes, counted as a FlatTree counts them, so that a benchmark handling
+ * one program per invocation can report its throughput and allocation per
+ * node. A program is a run of top-level declarations of the same size,
+ * topped up with global variables, one node each, to the exact count. The
+ * text is generated from a fixed seed and is the same on every run.
+ */
+public final class Programs {
+
+    public static final int NODES = 100000;
+
+    private static final long SEED = 142;
+    private static final int NESTING_DEPTH = 48;
+    private static final int EXPRESSION_OPERANDS = 64;
+
+    public enum Shape {
+        DEEP_NESTING,
+        LONG_EXPRESSIONS,
+        SMALL_FUNCTIONS,
+        GLOBAL_DECLARATIONS
+    }
+
+    private final Shape shape;
+    private final Random random = new Random(SEED);
+    private final StringBuilder text = new StringBuilder();
+    private int units;
+
+    private Programs(Shape shape)
+    {
+        this.shape = shape;
+    }
+
+    public static String generate(Shape shape)
+    {
+        Programs program = new Programs(shape);
+        program.prelude();
+        program.unit();
+        int one = countNodes(program.text.toString());
+        program.unit();
+        int perUnit = countNodes(program.text.toString()) - one;
+
+        int count = one + perUnit;
+        while (count + perUnit <= NODES) {
+            program.unit();
+            count += perUnit;
+        }
+        for (int i = 0; count < NODES; i++, count++)
+            program.text.append("var pad").append(i).append(" : int;\n");
+        return program.text.toString();
+    }
+
+    public static TokenBuffer tokenize(String text)
+    {
+        return new Scanner(new StringReader(text)).tokenize();
+    }
+
+    // Returns the number of nodes in the tree of text, which must parse without errors
+    public static int countNodes(String text)
+    {
+        Parser parser = new Parser(tokenize(text));
+        ast.Command tree = parser.parse();
+        if (parser.hasError())
+            throw new IllegalStateException("A generated program does not parse:\n" + parser.errorReport());
+        return FlatTree.of(tree).size();
+    }
+
+    private void prelude()
+    {
+        switch (shape) {
+            case SMALL_FUNCTIONS:
+                text.append("func s0(a : int, b : int) : int {\n    return a + b;\n}\n");
+                break;
+            case GLOBAL_DECLARATIONS:
+                break;
+            default:
+                text.append("var g : int;\n");
+                break;
+        }
+    }
+
+    // one top-level declaration, or a few, always with the same nodes
+    private void unit()
+    {
+        units++;
+        switch (shape) {
+            case DEEP_NESTING:
+                deepNesting();
+                break;
+            case LONG_EXPRESSIONS:
+                longExpressions();
+                break;
+            case SMALL_FUNCTIONS:
+                smallFunction();
+                break;
+            case GLOBAL_DECLARATIONS:
+                globalDeclarations();
+                break;
+        }
+    }
+
+    private void indent(int depth)
+    {
+        for (int i = 0; i < depth; i++)
+            text.append("  ");
+    }
+
+    // blocks inside blocks, alternately an if with an else and a while
+    private void deepNesting()
+    {
+        text.append("func n").append(units).append("(a : int) : void {\n");
+        text.append("  var x : int;\n  let x = a;\n");
+        for (int depth = 1; depth <= NESTING_DEPTH; depth++) {
+            indent(depth);
+            if (depth % 2 == 1)
+                text.append("if x > ").append(random.nextInt(100)).append(" {\n");
+            else
+                text.append("while x < ").append(random.nextInt(100)).append(" {\n");
+        }
+        indent(NESTING_DEPTH + 1);
+        text.append("let g = ((((x + 1) * 2) - g) / 3);\n");
+        for (int depth = NESTING_DEPTH; depth >= 1; depth--) {
+            indent(depth);
+            if (depth % 2 == 1) {
+                text.append("} else {\n");
+                indent(depth + 1);
+                text.append("::printInt(x);\n");
+                indent(depth);
+                text.append("}\n");
+            } else {
+                indent(depth + 1);
+                text.append("let x = x + 1;\n");
+                indent(depth);
+                text.append("}\n");
+            }
+        }
+        text.append("}\n");
+    }
+
+    // assignments of one long arithmetic and one long logical expression
+    private void longExpressions()
+    {
+        String[] arithmetic = { " + ", " - ", " * ", " / " };
+        text.append("func e").append(units).append("(a : int, b : bool) : void {\n");
+        text.append("  var x : int;\n  var c : bool;\n  let x = a");
+        for (int i = 1; i < EXPRESSION_OPERANDS; i++) {
+            text.append(arithmetic[random.nextInt(arithmetic.length)]);
+            if (i % 8 == 0)
+                text.append("(g * ").append(1 + random.nextInt(1000)).append(")");
+            else
+                text.append(i % 2 == 0 ? "x" : Integer.toString(1 + random.nextInt(1000)));
+        }
+        text.append(";\n  let c = b");
+        for (int i = 1; i < EXPRESSION_OPERANDS / 4; i++) {
+            text.append(random.nextBoolean() ? " and " : " or ");
+            text.append(i % 2 == 0 ? "not c" : "(x < " + random.nextInt(1000) + ")");
+        }
+        text.append(";\n}\n");
+    }
+
+    // each calls the one before it
+    private void smallFunction()
+    {
+        text.append("func s").append(units).append("(a : int, b : int) : int {\n");
+        text.append("    return a * ").append(1 + random.nextInt(100)).append(" + ::s").append(units - 1).append("(b, a);\n}\n");
+    }
+
+    private void globalDeclarations()
+    {
+        text.append("var i").append(units).append(" : int;\n");
+        text.append("var f").append(units).append(" : float;\n");
+        text.append("var b").append(units).append(" : bool;\n");
+        text.append("array a").append(units).append(" : float[").append(1 + random.nextInt(16)).append("][4];\n");
+    }
+}
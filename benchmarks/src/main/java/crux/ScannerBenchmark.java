@@ -0,0 +1,85 @@
+package crux;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/* Scanner throughput over the synthetic corpora.
+ *
+ * One invocation scans a whole corpus of Corpus.TOKENS tokens, and counts
+ * as that many operations: the score is tokens per second, and with the
+ * gc profiler gc.alloc.rate.norm is the bytes allocated per token. Reading
+ * the text into the Scanner is part of the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(Corpus.TOKENS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScannerBenchmark {
+
+    @Param({"IDENTIFIERS", "OPERATORS", "COMMENTS", "NUMBERS", "LONG_LINES"})
+    public Corpus.Shape corpus;
+
+    private String text;
+
+    @Setup
+    public void generate()
+    {
+        text = Corpus.generate(corpus);
+        int tokens = Corpus.countTokens(text);
+        if (tokens != Corpus.TOKENS)
+            throw new IllegalStateException("The " + corpus + " corpus has " + tokens + " tokens instead of " + Corpus.TOKENS + ".");
+    }
+
+    // one Token object per token, as the Parser pulls them
+    @Benchmark
+    public void next(Blackhole blackhole)
+    {
+        Scanner scanner = new Scanner(new StringReader(text));
+        Token token;
+        do {
+            token = scanner.next();
+            blackhole.consume(token);
+        } while (!token.is(Token.Kind.EOF));
+    }
+
+    // the tokens of next(), handed over from a lexer thread through a TokenPipeline
+    @Benchmark
+    public void pipelined(Blackhole blackhole)
+    {
+        TokenPipeline pipeline = new TokenPipeline(new Scanner(new StringReader(text)));
+        Token token;
+        do {
+            token = pipeline.next();
+            blackhole.consume(token);
+        } while (!token.is(Token.Kind.EOF));
+    }
+
+    @Benchmark
+    public TokenBuffer tokenize()
+    {
+        return new Scanner(new StringReader(text)).tokenize();
+    }
+
+    @Benchmark
+    public TokenBuffer tokenizeOffsets()
+    {
+        return new Scanner(new StringReader(text)).tokenizeOffsets();
+    }
+}
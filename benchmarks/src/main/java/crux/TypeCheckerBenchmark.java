@@ -0,0 +1,72 @@
+package crux;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import types.TypeChecker;
+
+/* TypeChecker throughput over the synthetic programs.
+ *
+ * The program is parsed once, and each invocation checks its whole tree
+ * of Programs.NODES nodes with a new TypeChecker, counting as that many
+ * operations: the score is nodes per second, and with the gc profiler
+ * gc.alloc.rate.norm is the bytes allocated per node. checkFlat() checks
+ * the same program as a FlatTree, in its arrays.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(Programs.NODES)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeCheckerBenchmark {
+
+    @Param({"DEEP_NESTING", "LONG_EXPRESSIONS", "SMALL_FUNCTIONS", "GLOBAL_DECLARATIONS"})
+    public Programs.Shape program;
+
+    private ast.Command tree;
+    private ast.FlatTree flatTree;
+
+    @Setup
+    public void generate()
+    {
+        String text = Programs.generate(program);
+        int nodes = Programs.countNodes(text);
+        if (nodes != Programs.NODES)
+            throw new IllegalStateException("The " + program + " program has " + nodes + " nodes instead of " + Programs.NODES + ".");
+        tree = new Parser(Programs.tokenize(text)).parse();
+        TypeChecker checker = new TypeChecker();
+        if (!checker.check(tree))
+            throw new IllegalStateException("The " + program + " program does not type-check:\n" + checker.errorReport());
+        flatTree = ast.FlatTree.of(tree);
+    }
+
+    @Benchmark
+    public TypeChecker check()
+    {
+        TypeChecker checker = new TypeChecker();
+        checker.check(tree);
+        return checker;
+    }
+
+    @Benchmark
+    public TypeChecker checkFlat()
+    {
+        TypeChecker checker = new TypeChecker();
+        checker.check(flatTree);
+        return checker;
+    }
+}
@@ -0,0 +1,133 @@
+package crux;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ast.Command;
+import ast.FlatTree;
+import ast.PrettyPrinter;
+
+/* A stored tree must load back to the same program, and a file with any
+ * other bytes must load as a cache miss, never as an exception.
+ */
+class AstCacheTest {
+
+    // the magic number, the version and the hash
+    private static final int HEADER = 4 + 4 + 32;
+
+    private static String parse(String source)
+    {
+        Parser parser = new Parser(new Scanner(new StringReader(source)));
+        Command tree = parser.parse();
+        return SamplePrograms.compile(parser.errorReport(), tree, null);
+    }
+
+    private static byte[] hash(String source)
+    {
+        return AstCache.hash(source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Path store(AstCache cache, Path directory, String source) throws IOException
+    {
+        cache.store(hash(source), FlatTree.of(new Parser(new Scanner(new StringReader(source))).parse()));
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".ast")).findFirst().get();
+        }
+    }
+
+    // whatever load() makes of the bytes, it does not throw, and a tree it returns can be materialized
+    private static FlatTree load(AstCache cache, Path file, String source, byte[] image) throws IOException
+    {
+        Files.write(file, image);
+        FlatTree tree = cache.load(hash(source));
+        if (tree != null)
+            tree.accept(new PrettyPrinter());
+        return tree;
+    }
+
+    private static byte[] withInt(byte[] image, int offset, int value)
+    {
+        byte[] changed = image.clone();
+        ByteBuffer.wrap(changed).putInt(offset, value);
+        return changed;
+    }
+
+    // as the Compiler stores them, only the programs that parse without errors
+    @Test
+    void storedTreesLoad(@TempDir Path directory) throws IOException
+    {
+        AstCache cache = new AstCache(directory);
+        for (String name : SamplePrograms.NAMES) {
+            String source = SamplePrograms.read(name);
+            Parser parser = new Parser(new Scanner(new StringReader(source)));
+            Command parsed = parser.parse();
+            if (parser.hasError())
+                continue;
+            cache.store(hash(source), FlatTree.of(parsed));
+            FlatTree tree = cache.load(hash(source));
+            assertNotNull(tree, name);
+            assertEquals(parse(source), SamplePrograms.compile("", tree, null), name);
+        }
+        assertNull(cache.load(hash("var missing : int;")));
+    }
+
+    @Test
+    void corruptImagesMiss(@TempDir Path directory) throws IOException
+    {
+        AstCache cache = new AstCache(directory);
+        String source = SamplePrograms.read("functions");
+        Path file = store(cache, directory, source);
+        byte[] image = Files.readAllBytes(file);
+        ByteBuffer columns = ByteBuffer.wrap(image);
+        int size = columns.getInt(HEADER);
+        int kinds = HEADER + 4 + 4 + 1;
+        int firstChild = kinds + size;
+        int nextSibling = firstChild + 4 * size;
+        int columnCount = image[HEADER + 8] != 0 ? 5 : 4;
+        int symbolCount = firstChild + 4 * size * columnCount;
+        assertNotNull(load(cache, file, source, image));
+
+        assertNull(load(cache, file, source, withInt(image, HEADER, -1)));
+        assertNull(load(cache, file, source, withInt(image, HEADER, Integer.MAX_VALUE)));
+        assertNull(load(cache, file, source, withInt(image, HEADER + 4, size)));
+        assertNull(load(cache, file, source, withInt(image, symbolCount, -1)));
+        assertNull(load(cache, file, source, withInt(image, symbolCount, Integer.MAX_VALUE)));
+        assertNull(load(cache, file, source, withInt(image, symbolCount + 4, -1)));
+        assertNull(load(cache, file, source, withInt(image, symbolCount, 0)));
+        for (int id = 0; id < size; id++) {
+            byte[] changed = image.clone();
+            changed[kinds + id] = (byte) (id % 2 == 0 ? 127 : -1);
+            assertNull(load(cache, file, source, changed), "kind of " + id);
+            for (int child : new int[] { id, size, -2, Integer.MIN_VALUE }) {
+                assertNull(load(cache, file, source, withInt(image, firstChild + 4 * id, child)), "child of " + id);
+                assertNull(load(cache, file, source, withInt(image, nextSibling + 4 * id, child)), "sibling of " + id);
+            }
+        }
+        for (int length = 0; length < image.length; length += 1 + length / 32)
+            assertNull(load(cache, file, source, Arrays.copyOf(image, length)), "truncated to " + length);
+
+        Random random = new Random(20);
+        for (int run = 0; run < 1000; run++) {
+            byte[] changed = image.clone();
+            for (int flips = 1 + random.nextInt(4); flips > 0; flips--) {
+                int offset = HEADER + random.nextInt(image.length - HEADER);
+                changed[offset] = (byte) (random.nextBoolean() ? random.nextInt(256) : changed[offset] ^ 1 << random.nextInt(8));
+            }
+            load(cache, file, source, changed);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package crux;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import ast.Command;
+import ast.Declaration;
+import ast.DeclarationList;
+
+/* After every edit, an IncrementalParser must hold the tokens Scanner
+ * would make of the edited source, and a tree that compiles to what
+ * Parser.parse() makes of it.
+ */
+class IncrementalParserTest {
+
+    private static final String[] STATEMENTS = {
+            "::printInt(7);\n", "let count = count + 1;\n", "var extra : int;\n", "return 0;\n"
+    };
+    private static final String[] DECLARATIONS = {
+            "var zz : bool;\n", "func helper() : void { var q : int; }\n", "array ys : int[3];\n"
+    };
+
+    private static String compile(IncrementalParser parser)
+    {
+        return SamplePrograms.compile(parser.errorReport(), parser.tree(), parser.tokens());
+    }
+
+    private static String compile(String source, boolean positions)
+    {
+        TokenBuffer tokens = positions ? SamplePrograms.tokenize(source) : SamplePrograms.tokenizeOffsets(source);
+        Parser parser = new Parser(tokens);
+        Command tree = parser.parse();
+        return SamplePrograms.compile(parser.errorReport(), tree, tokens);
+    }
+
+    private static IncrementalParser parser(String source, boolean positions)
+    {
+        return new IncrementalParser(positions ? SamplePrograms.tokenize(source) : SamplePrograms.tokenizeOffsets(source));
+    }
+
+    private static List<Declaration> declarations(IncrementalParser parser)
+    {
+        List<Declaration> declarations = new ArrayList<Declaration>();
+        if (parser.tree() instanceof DeclarationList) {
+            for (Declaration declaration : (DeclarationList) parser.tree())
+                declarations.add(declaration);
+        }
+        return declarations;
+    }
+
+    /* Random runs of edits: lines added, tokens dropped, numbers changed,
+     * statements and declarations added, and every other edit of a program
+     * that then has errors undone, so that most edits start from a program
+     * that can be reparsed in part.
+     */
+    @Test
+    void randomEdits()
+    {
+        Random random = new Random(19);
+        for (String sample : SamplePrograms.all()) {
+            for (boolean positions : new boolean[] { true, false }) {
+                for (int run = 0; run < 12; run++) {
+                    String source = sample;
+                    IncrementalParser parser = parser(source, positions);
+                    int undoOffset = 0, undoLength = 0;
+                    String undoText = "";
+                    for (int step = 0; step < 15; step++) {
+                        TokenBuffer tokens = parser.tokens();
+                        int last = tokens.size() - 1;
+                        int offset, removed;
+                        String inserted;
+                        if (step % 2 == 1 && parser.hasError()) {
+                            offset = undoOffset;
+                            removed = undoLength;
+                            inserted = undoText;
+                        } else {
+                            int token = last == 0 ? 0 : random.nextInt(last);
+                            offset = tokens.offset(token);
+                            removed = 0;
+                            switch (random.nextInt(6)) {
+                                case 0:
+                                    inserted = "\n";
+                                    break;
+                                case 1:
+                                    removed = tokens.length(token);
+                                    inserted = "";
+                                    break;
+                                case 2:
+                                    removed = tokens.length(token);
+                                    inserted = tokens.is(token, Token.Kind.INTEGER) ? Integer.toString(random.nextInt(100)) : tokens.lexeme(token);
+                                    break;
+                                case 3:
+                                    inserted = STATEMENTS[random.nextInt(STATEMENTS.length)];
+                                    break;
+                                case 4:
+                                    inserted = DECLARATIONS[random.nextInt(DECLARATIONS.length)];
+                                    break;
+                                default:
+                                    offset = source.length();
+                                    inserted = "\n" + DECLARATIONS[random.nextInt(DECLARATIONS.length)];
+                                    break;
+                            }
+                        }
+                        undoOffset = offset;
+                        undoLength = inserted.length();
+                        undoText = source.substring(offset, offset + removed);
+
+                        parser.edit(offset, removed, inserted);
+                        source = source.substring(0, offset) + inserted + source.substring(offset + removed);
+
+                        TokenBuffer scanned = positions ? SamplePrograms.tokenize(source) : SamplePrograms.tokenizeOffsets(source);
+                        assertEquals(SamplePrograms.describe(scanned), SamplePrograms.describe(parser.tokens()), source);
+                        assertEquals(compile(source, positions), compile(parser), source);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void editInOneFunctionKeepsTheOthers()
+    {
+        String source = SamplePrograms.read("functions");
+        IncrementalParser parser = parser(source, true);
+        List<Declaration> before = declarations(parser);
+
+        String target = "let result = result + x;";
+        int offset = source.indexOf(target);
+        parser.edit(offset, target.length(), "let result = result + x * 2.0;\n");
+
+        List<Declaration> after = declarations(parser);
+        assertEquals(1, parser.reparsedDeclarations());
+        assertEquals(before.size(), after.size());
+        int changed = 0;
+        for (int i = 0; i < after.size(); i++) {
+            if (after.get(i) != before.get(i))
+                changed++;
+        }
+        assertEquals(1, changed);
+        assertSame(before.get(0), after.get(0));
+        assertTrue(!parser.hasError(), parser.errorReport());
+    }
+
+    @Test
+    void errorsFallBackToAFullParse()
+    {
+        String source = SamplePrograms.read("functions");
+        IncrementalParser parser = parser(source, true);
+        int offset = source.indexOf("return n;");
+        parser.edit(offset, 0, "return undeclared;\n");
+        String edited = source.substring(0, offset) + "return undeclared;\n" + source.substring(offset);
+
+        assertTrue(parser.hasError());
+        assertEquals(declarations(parser).size(), parser.reparsedDeclarations());
+        assertEquals(compile(edited, true), compile(parser));
+    }
+
+    // the kept function is moved a line down, with a type error at the bottom to report where it went
+    @Test
+    void deeplyNestedDeclarationIsMoved()
+    {
+        StringBuilder source = new StringBuilder("func first() : void {\n    var a : int;\n}\nfunc deep() : void {\nvar a : int;\n");
+        int depth = 20000;
+        for (int i = 0; i < depth; i++)
+            source.append("if true {\n");
+        source.append("let a = 1 + true;\n");
+        for (int i = 0; i < depth; i++)
+            source.append("}\n");
+        source.append("}\n");
+        String original = source.toString();
+        IncrementalParser parser = parser(original, true);
+        Declaration deep = declarations(parser).get(1);
+
+        int offset = original.indexOf("var a");
+        parser.edit(offset, 0, "var b : int;\n    ");
+        String edited = original.substring(0, offset) + "var b : int;\n    " + original.substring(offset);
+
+        assertEquals(1, parser.reparsedDeclarations());
+        assertSame(deep, declarations(parser).get(1));
+        Parser fresh = new Parser(SamplePrograms.tokenize(edited));
+        Command tree = fresh.parse();
+        assertTrue(!fresh.hasError(), fresh.errorReport());
+        types.TypeChecker expected = new types.TypeChecker();
+        expected.check(tree);
+        types.TypeChecker actual = new types.TypeChecker();
+        actual.check(parser.tree());
+        assertTrue(expected.hasError());
+        assertEquals(expected.errorReport(), actual.errorReport());
+    }
+}
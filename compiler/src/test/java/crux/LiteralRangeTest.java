@@ -0,0 +1,74 @@
+package crux;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+
+import org.junit.jupiter.api.Test;
+
+import ast.Command;
+import ast.PrettyPrinter;
+
+/* An INTEGER past Integer.MAX_VALUE or a FLOAT that rounds to infinity is
+ * reported where the literal starts, over a Scanner and over a TokenBuffer
+ * alike. Values at the limits are kept as they are.
+ */
+class LiteralRangeTest {
+
+    private static final String FLOAT_MAX = "340282346638528859811704183484516925440.0";
+    private static final String FLOAT_INFINITE = "999999999999999999999999999999999999999999.0";
+
+    private static String program(String declarations, String statements)
+    {
+        return declarations + "\nfunc main() : void {\n    var i : int;\n    var f : float;\n" + statements + "}\n";
+    }
+
+    private static void assertParse(String source, String errors, String tree)
+    {
+        Parser scanned = new Parser(new Scanner(new StringReader(source)));
+        Parser buffered = new Parser(SamplePrograms.tokenize(source));
+        for (Parser parser : new Parser[] { scanned, buffered }) {
+            Command ast = parser.parse();
+            assertEquals(errors, parser.errorReport(), source);
+            PrettyPrinter printer = new PrettyPrinter();
+            ast.accept(printer);
+            assertTrue(printer.toString().contains(tree), printer.toString());
+        }
+    }
+
+    @Test
+    void limitsAreKept()
+    {
+        assertParse(program("", "    let i = 2147483647;\n    let f = " + FLOAT_MAX + ";\n"),
+                "", "LiteralInt(5,13)[2147483647]");
+        assertParse(program("", "    let f = " + FLOAT_MAX + ";\n"),
+                "", "LiteralFloat(5,13)[" + Float.MAX_VALUE + "]");
+        assertParse(program("array a : int[2147483647];", ""), "", "ArrayDeclaration");
+    }
+
+    @Test
+    void integerOutOfRange()
+    {
+        assertParse(program("", "    let i = 2147483648;\n    let i = 99999999999999999999;\n"),
+                "SyntaxError(5,13)[Literal 2147483648 is out of range for INTEGER.]\n"
+                        + "SyntaxError(6,13)[Literal 99999999999999999999 is out of range for INTEGER.]\n",
+                "Error(5,13)[SyntaxError(5,13)[Literal 2147483648 is out of range for INTEGER.]]");
+    }
+
+    @Test
+    void floatOutOfRange()
+    {
+        assertParse(program("", "    let f = 1.0 + " + FLOAT_INFINITE + ";\n"),
+                "SyntaxError(5,19)[Literal " + FLOAT_INFINITE + " is out of range for FLOAT.]\n",
+                "Error(5,19)");
+    }
+
+    // an array extent must be an INTEGER, so parsing stops there
+    @Test
+    void arrayExtentOutOfRange()
+    {
+        assertParse(program("array a : int[4294967296];", ""),
+                "SyntaxError(1,15)[Literal 4294967296 is out of range for INTEGER.]\n", "");
+    }
+}
@@ -0,0 +1,132 @@
+package crux;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import ast.Command;
+
+/* Every way of parsing a program must compile it to the same errors, tree
+ * and code as Parser.parse() over a Scanner, for the samples and for
+ * mutated copies of them, most of which have errors.
+ */
+class ParseModesTest {
+
+    private static List<String> sources;
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void setUp()
+    {
+        sources = SamplePrograms.mutated(16, 120);
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void tearDown()
+    {
+        pool.shutdown();
+    }
+
+    private static String parse(String source)
+    {
+        Parser parser = new Parser(new Scanner(new StringReader(source)));
+        Command tree = parser.parse();
+        return SamplePrograms.compile(parser.errorReport(), tree, null);
+    }
+
+    // the lines of the printed tree, which has offsets in place of positions
+    private static String withoutTree(String compiled)
+    {
+        return compiled.replaceAll("(?m)^ *ast\\..*\n", "");
+    }
+
+    @Test
+    void tokenBuffer()
+    {
+        for (String source : sources) {
+            TokenBuffer tokens = SamplePrograms.tokenize(source);
+            Parser parser = new Parser(tokens);
+            Command tree = parser.parse();
+            assertEquals(parse(source), SamplePrograms.compile(parser.errorReport(), tree, tokens), source);
+        }
+    }
+
+    // as the Compiler scans a source it has read to look it up in an AstCache
+    @Test
+    void sourceBytes()
+    {
+        for (String source : sources) {
+            Parser parser = new Parser(new Scanner(source.getBytes(StandardCharsets.UTF_8)));
+            Command tree = parser.parse();
+            assertEquals(parse(source), SamplePrograms.compile(parser.errorReport(), tree, null), source);
+        }
+    }
+
+    @Test
+    void offsetsOnly()
+    {
+        for (String source : sources) {
+            TokenBuffer tokens = SamplePrograms.tokenizeOffsets(source);
+            Parser parser = new Parser(tokens);
+            Command tree = parser.parse();
+            assertEquals(withoutTree(parse(source)),
+                    withoutTree(SamplePrograms.compile(parser.errorReport(), tree, tokens)), source);
+        }
+    }
+
+    @Test
+    void predictive()
+    {
+        for (String source : sources) {
+            Parser parser = new Parser(new Scanner(new StringReader(source)));
+            Command tree = parser.parsePredictive();
+            assertEquals(parse(source), SamplePrograms.compile(parser.errorReport(), tree, null), source);
+        }
+    }
+
+    @Test
+    void flat()
+    {
+        for (String source : sources) {
+            TokenBuffer tokens = SamplePrograms.tokenize(source);
+            Parser parser = new Parser(tokens);
+            ast.FlatTree tree = parser.parseFlat();
+            assertEquals(parse(source), SamplePrograms.compile(parser.errorReport(), tree, tokens), source);
+        }
+    }
+
+    @Test
+    void parallel()
+    {
+        for (String source : sources) {
+            TokenBuffer tokens = SamplePrograms.tokenize(source);
+            Parser parser = new Parser(tokens);
+            Command tree = parser.parseParallel(pool);
+            assertEquals(parse(source), SamplePrograms.compile(parser.errorReport(), tree, tokens), source);
+        }
+    }
+
+    // the Resolver reports the name errors instead of the Parser, it only runs on trees without syntax errors
+    @Test
+    void resolver()
+    {
+        for (String source : sources) {
+            Parser parser = new Parser(new Scanner(new StringReader(source)));
+            parser.setResolveNames(false);
+            Command tree = parser.parse();
+            if (parser.hasError())
+                continue;
+            Resolver resolver = new Resolver();
+            resolver.resolve(tree);
+            assertEquals(parse(source), SamplePrograms.compile(resolver.errorReport(), tree, null), source);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package crux;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ast.Command;
+import ast.FlatTree;
+import ast.PrettyPrinter;
+import mips.CodeGen;
+import types.TypeChecker;
+
+// The sample programs the differential tests start from, and what the compiler makes of a program
+final class SamplePrograms {
+
+    static final String[] NAMES = {
+            "globals", "functions", "nested", "floats", "one-line",
+            "redeclared", "lexical-errors", "unfinished"
+    };
+
+    private SamplePrograms() { }
+
+    static String read(String name)
+    {
+        try (InputStream in = SamplePrograms.class.getResourceAsStream("programs/" + name + ".crx")) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1)
+                bytes.write(buffer, 0, n);
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read the sample program " + name + ".", e);
+        }
+    }
+
+    static List<String> all()
+    {
+        List<String> sources = new ArrayList<String>();
+        for (String name : NAMES)
+            sources.add(read(name));
+        return sources;
+    }
+
+    /* The samples, and for each count copies in which one token is dropped,
+     * doubled or replaced by another token of the program. Most of them no
+     * longer parse, and of those that do many no longer type-check.
+     */
+    static List<String> mutated(long seed, int count)
+    {
+        Random random = new Random(seed);
+        List<String> sources = new ArrayList<String>();
+        for (String source : all()) {
+            sources.add(source);
+            TokenBuffer tokens = tokenize(source);
+            int last = tokens.size() - 1; // the EOF
+            if (last < 2)
+                continue;
+            for (int i = 0; i < count; i++) {
+                int target = random.nextInt(last);
+                int other = random.nextInt(last);
+                int change = random.nextInt(3);
+                StringBuilder mutant = new StringBuilder();
+                for (int t = 0; t < last; t++) {
+                    if (t == target && change == 0)
+                        continue;
+                    if (t == target && change == 2)
+                        mutant.append(tokens.lexeme(other));
+                    else
+                        mutant.append(tokens.lexeme(t));
+                    if (t == target && change == 1)
+                        mutant.append(' ').append(tokens.lexeme(other));
+                    mutant.append(t % 7 == 6 ? '\n' : ' ');
+                }
+                sources.add(mutant.toString());
+            }
+        }
+        return sources;
+    }
+
+    static TokenBuffer tokenize(String source)
+    {
+        return new Scanner(new StringReader(source)).tokenize();
+    }
+
+    static TokenBuffer tokenizeOffsets(String source)
+    {
+        return new Scanner(new StringReader(source)).tokenizeOffsets();
+    }
+
+    // one line per token, with everything a TokenBuffer holds of it
+    static String describe(TokenBuffer tokens)
+    {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < tokens.size(); i++) {
+            out.append(tokens.kind(i)).append(' ').append(tokens.offset(i)).append(' ').append(tokens.length(i))
+                    .append(' ').append(tokens.value(i)).append(' ').append(tokens.lineNumber(i)).append(':')
+                    .append(tokens.charPosition(i)).append(' ').append(tokens.lexeme(i)).append('\n');
+        }
+        return out.toString();
+    }
+
+    // the parse errors, the tree, then the type errors and the code if there were none before
+    static String compile(String parseErrors, Command tree, TokenBuffer tokens)
+    {
+        PrettyPrinter printer = new PrettyPrinter();
+        tree.accept(printer);
+        StringBuilder out = new StringBuilder(parseErrors).append(printer);
+        if (parseErrors.isEmpty()) {
+            TypeChecker checker = typeChecker(tokens);
+            checker.check(tree);
+            out.append(checker.errorReport());
+            if (!checker.hasError()) {
+                CodeGen generator = new CodeGen(checker);
+                generator.generate(tree);
+                out.append(program(generator));
+            }
+        }
+        return out.toString();
+    }
+
+    static String compile(String parseErrors, FlatTree tree, TokenBuffer tokens)
+    {
+        PrettyPrinter printer = new PrettyPrinter();
+        tree.accept(printer);
+        StringBuilder out = new StringBuilder(parseErrors).append(printer);
+        if (parseErrors.isEmpty()) {
+            TypeChecker checker = typeChecker(tokens);
+            checker.check(tree);
+            out.append(checker.errorReport());
+            if (!checker.hasError()) {
+                CodeGen generator = new CodeGen(checker);
+                generator.generate(tree);
+                out.append(program(generator));
+            }
+        }
+        return out.toString();
+    }
+
+    private static TypeChecker typeChecker(TokenBuffer tokens)
+    {
+        if (tokens == null || tokens.hasPositions())
+            return new TypeChecker();
+        return new TypeChecker(tokens.lineMap());
+    }
+
+    private static String program(CodeGen generator)
+    {
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(code);
+        generator.getProgram().print(out);
+        out.flush();
+        return code.toString();
+    }
+}
@@ -0,0 +1,148 @@
+package crux;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/* Every way of scanning a source must make the tokens, lexemes and
+ * positions Scanner.next() makes of it with the state-list engine.
+ */
+class ScannerTest {
+
+    private static final String[] EDGE_CASES = {
+            "", " ", "\n", "\t\t\n\n", "a", "9", "//", "// comment at EOF", "x = 1; //", "x\n//",
+            "=\n=", ">\n=", "<\n=", "!\n=", ":\n:", "! =", ": :", "==", "===", "!==", "<=>", ":::", "!",
+            "$", "a$b", "#@`~^&|?'\"\\", "\uffff", "a\uffffb", "let x = 1;\n\uffff\nlet y = 2;",
+            "1.", ".5", "1.2.3", "007", "1..2", "12345678901234567890", "andor", "and or", "_a1", "A_b_C",
+            "let\tx\t=\t1;", "\n\n\nlet", "func f(a : int) : void { return a; }",
+            "\u00e9", "caf\u00e9 = 1;", "x y"
+    };
+
+    private static final String ALPHABET = "aZ_9.0 \t\n\n+-*/=<>!:;,(){}[]$#letvarfuncifelsewhile";
+
+    static List<String> sources()
+    {
+        List<String> sources = new ArrayList<String>(SamplePrograms.all());
+        for (String edgeCase : EDGE_CASES)
+            sources.add(edgeCase);
+        Random random = new Random(1);
+        for (int i = 0; i < 300; i++) {
+            StringBuilder source = new StringBuilder();
+            int length = random.nextInt(60);
+            for (int c = 0; c < length; c++)
+                source.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            sources.add(source.toString());
+        }
+        return sources;
+    }
+
+    static String scan(Scanner scanner)
+    {
+        StringBuilder out = new StringBuilder();
+        Token token;
+        do {
+            token = scanner.next();
+            out.append(token).append('\n');
+        } while (!token.is(Token.Kind.EOF));
+        return out.toString();
+    }
+
+    @Test
+    void tableMatchesStateList()
+    {
+        for (String source : sources()) {
+            String expected = scan(new Scanner(new StringReader(source), Scanner.Engine.STATE_LIST));
+            assertEquals(expected, scan(new Scanner(new StringReader(source), Scanner.Engine.TABLE)), source);
+        }
+    }
+
+    // lines and columns looked up in the LineMap
+    @Test
+    void offsetsMatchPositions()
+    {
+        for (String source : sources()) {
+            assertEquals(SamplePrograms.describe(SamplePrograms.tokenize(source)),
+                    SamplePrograms.describe(SamplePrograms.tokenizeOffsets(source)), source);
+        }
+    }
+
+    // chunks far smaller than the default, so that nearly every line is a chunk of its own
+    @Test
+    void parallelMatchesSequential()
+    {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (String source : sources()) {
+                String expected = SamplePrograms.describe(SamplePrograms.tokenize(source));
+                for (int chunkSize : new int[] { 1, 3, 7 }) {
+                    TokenBuffer tokens = new Scanner(new StringReader(source)).tokenize(pool, chunkSize);
+                    assertEquals(expected, SamplePrograms.describe(tokens), chunkSize + ": " + source);
+                }
+            }
+
+            StringBuilder large = new StringBuilder();
+            while (large.length() < 1 << 20) {
+                for (String sample : SamplePrograms.all())
+                    large.append(sample).append('\n');
+            }
+            String source = large.toString();
+            assertEquals(SamplePrograms.describe(SamplePrograms.tokenize(source)),
+                    SamplePrograms.describe(new Scanner(new StringReader(source)).tokenize(pool)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // plain ASCII is mapped, anything else is read through a Reader in the platform charset
+    @Test
+    void pathMatchesReader(@TempDir Path directory) throws IOException
+    {
+        Path file = directory.resolve("source.crx");
+        for (String source : sources()) {
+            byte[] bytes = source.getBytes(Charset.defaultCharset());
+            Files.write(file, bytes);
+            String expected = scan(new Scanner(new StringReader(new String(bytes, Charset.defaultCharset()))));
+            assertEquals(expected, scan(new Scanner(file)), source);
+        }
+    }
+
+    private static long count(Path directory) throws IOException
+    {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void pathIsClosed(@TempDir Path directory) throws IOException
+    {
+        Path descriptors = Paths.get("/proc/self/fd");
+        assumeTrue(Files.isDirectory(descriptors));
+        Path ascii = directory.resolve("ascii.crx");
+        Path other = directory.resolve("other.crx");
+        Files.write(ascii, SamplePrograms.read("functions").getBytes(Charset.defaultCharset()));
+        Files.write(other, new byte[] { 'v', 'a', 'r', ' ', (byte) 0xc3, (byte) 0xa9, ';' });
+
+        long open = count(descriptors);
+        for (int i = 0; i < 200; i++) {
+            scan(new Scanner(ascii));
+            scan(new Scanner(other));
+        }
+        assertTrue(count(descriptors) < open + 10);
+    }
+}
@@ -0,0 +1,144 @@
+package crux;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/* Random runs of declarations, lookups and scope changes must give the
+ * same symbols, the same errors and the same listing with every Scope as
+ * with a chain of SymbolTables. "Aa" and "BB" have the same hash code.
+ */
+class ScopesTest {
+
+    private static String[] names(Random random, int bound)
+    {
+        String[] names = new String[1 + random.nextInt(bound)];
+        for (int i = 0; i < names.length; i++) {
+            if (i == 0)
+                names[i] = "printInt";
+            else if (i == 1)
+                names[i] = random.nextBoolean() ? "Aa" : "BB";
+            else
+                names[i] = "n" + i;
+        }
+        return names;
+    }
+
+    // the symbol found, or the error
+    private static String insert(Scope scope, Symbol symbol)
+    {
+        try {
+            return "declared " + System.identityHashCode(scope.insert(symbol));
+        } catch (RedeclarationError e) {
+            return e.getMessage();
+        }
+    }
+
+    // each table makes its own predefined symbols, the others are the ones declared
+    private static String lookup(Scope scope, String name, Set<Symbol> declared)
+    {
+        try {
+            Symbol symbol = scope.lookup(name);
+            if (!declared.contains(symbol))
+                return "found predefined " + symbol;
+            return "found " + System.identityHashCode(symbol);
+        } catch (SymbolNotFoundError e) {
+            return "not found " + e.name();
+        }
+    }
+
+    // the same operations on expected and actual, with an outcome compared after each
+    private static void compare(Random random, String[] names, Scope expected, Scope actual)
+    {
+        Set<Symbol> declared = new HashSet<Symbol>();
+        int depth = 0;
+        for (int step = 0; step < 300; step++) {
+            int operation = random.nextInt(10);
+            String name = names[random.nextInt(names.length)];
+            if (operation < 2) {
+                expected = expected.enterScope();
+                actual = actual.enterScope();
+                depth++;
+            } else if (operation < 4 && depth > 0) {
+                expected = expected.exitScope();
+                actual = actual.exitScope();
+                depth--;
+            } else if (operation < 7) {
+                Symbol symbol = new Symbol(name);
+                declared.add(symbol);
+                assertEquals(insert(expected, symbol), insert(actual, symbol));
+            } else {
+                assertEquals(lookup(expected, name, declared), lookup(actual, name, declared));
+            }
+            assertEquals(depth == 0, actual.isGlobal());
+            assertEquals(expected.toString(), actual.toString());
+        }
+    }
+
+    @Test
+    void scopeStack()
+    {
+        Random random = new Random(23);
+        for (int run = 0; run < 200; run++)
+            compare(random, names(random, 16), new SymbolTable(null), new ScopeStack());
+
+        ScopeStack scope = new ScopeStack();
+        assertTrue(scope.isGlobal());
+        assertThrows(IllegalStateException.class, scope::exitScope);
+    }
+
+    // with enough names that the trie of a version is several levels deep
+    @Test
+    void persistentCursor()
+    {
+        Random random = new Random(24);
+        for (int run = 0; run < 200; run++) {
+            String[] names = names(random, run % 4 == 0 ? 2000 : 16);
+            compare(random, names, new SymbolTable(null), new PersistentSymbolTable.Cursor(new PersistentSymbolTable()));
+        }
+    }
+
+    // every version keeps its declarations whatever is done to the ones made from it
+    @Test
+    void persistentVersionsStay()
+    {
+        Random random = new Random(24);
+        for (int run = 0; run < 100; run++) {
+            String[] names = names(random, 2000);
+            List<PersistentSymbolTable> versions = new ArrayList<PersistentSymbolTable>();
+            List<String> listings = new ArrayList<String>();
+            PersistentSymbolTable scope = new PersistentSymbolTable();
+            int depth = 0;
+            for (int step = 0; step < 300; step++) {
+                int operation = random.nextInt(10);
+                if (operation < 2) {
+                    scope = scope.enterScope();
+                    depth++;
+                } else if (operation < 4 && depth > 0) {
+                    scope = scope.exitScope();
+                    depth--;
+                } else {
+                    try {
+                        scope = scope.insert(names[random.nextInt(names.length)]);
+                    } catch (RedeclarationError e) {
+                        // the version stays as it was
+                    }
+                }
+                if (random.nextInt(10) == 0) {
+                    versions.add(scope);
+                    listings.add(scope.toString());
+                }
+            }
+            for (int i = 0; i < versions.size(); i++)
+                assertEquals(listings.get(i), versions.get(i).toString());
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package crux;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/* A TokenPipeline must hand on exactly the tokens its Scanner makes, and
+ * its lexer thread must end at EOF, on close(), and when it fails.
+ */
+class TokenPipelineTest {
+
+    private static String large()
+    {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 200000; i++)
+            source.append("var v").append(i).append(" : int;\n");
+        return source.toString();
+    }
+
+    private static String drain(TokenPipeline pipeline)
+    {
+        StringBuilder out = new StringBuilder();
+        Token token;
+        do {
+            token = pipeline.next();
+            out.append(token).append('\n');
+        } while (!token.is(Token.Kind.EOF));
+        return out.toString();
+    }
+
+    private static List<Thread> lexers()
+    {
+        List<Thread> lexers = new ArrayList<Thread>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("crux-lexer") && thread.isAlive())
+                lexers.add(thread);
+        }
+        return lexers;
+    }
+
+    private static void awaitNoLexer() throws InterruptedException
+    {
+        long deadline = System.nanoTime() + 5000000000L;
+        while (!lexers().isEmpty()) {
+            if (System.nanoTime() > deadline)
+                fail("The lexer thread is still running.");
+            Thread.sleep(10);
+        }
+    }
+
+    // capacities of one batch, of a size that is rounded up, and the default, all far below the large source
+    @Test
+    void matchesScanner() throws InterruptedException
+    {
+        List<String> sources = ScannerTest.sources();
+        sources.add(large());
+        for (String source : sources) {
+            String expected = ScannerTest.scan(new Scanner(new StringReader(source)));
+            for (int capacity : new int[] { 1, 64, 100, TokenPipeline.DEFAULT_CAPACITY }) {
+                TokenPipeline pipeline = new TokenPipeline(new Scanner(new StringReader(source)), capacity);
+                assertEquals(expected, drain(pipeline), capacity + ": " + source);
+                assertEquals(Token.Kind.EOF, pipeline.next().kind());
+            }
+        }
+        awaitNoLexer();
+    }
+
+    @Test
+    void readsPath(@TempDir Path directory) throws IOException, InterruptedException
+    {
+        Path file = directory.resolve("source.crx");
+        String source = SamplePrograms.read("functions");
+        Files.write(file, source.getBytes(Charset.defaultCharset()));
+        assertEquals(ScannerTest.scan(new Scanner(new StringReader(source))), drain(new TokenPipeline(file)));
+
+        RuntimeException failure = assertThrows(RuntimeException.class,
+                () -> new TokenPipeline(directory.resolve("missing.crx")).next());
+        assertTrue(failure.getCause() instanceof NoSuchFileException, failure.toString());
+        awaitNoLexer();
+    }
+
+    // the lexer parks without a timeout on a full ring, and close() wakes it to end
+    @Test
+    void closeStopsTheLexer() throws InterruptedException
+    {
+        TokenPipeline pipeline = new TokenPipeline(new Scanner(new StringReader(large())), 64);
+        for (int i = 0; i < 10; i++)
+            pipeline.next();
+
+        long deadline = System.nanoTime() + 5000000000L;
+        while (lexers().size() != 1 || lexers().get(0).getState() != Thread.State.WAITING) {
+            if (System.nanoTime() > deadline)
+                fail("The lexer thread does not wait for the consumer.");
+            Thread.sleep(10);
+        }
+        pipeline.close();
+        awaitNoLexer();
+        assertThrows(IllegalStateException.class, () -> {
+            for (int i = 0; i < 1000; i++)
+                pipeline.next();
+        });
+    }
+
+    @Test
+    void parserClosesAtSyntaxError() throws InterruptedException
+    {
+        Parser parser = new Parser(new TokenPipeline(new Scanner(new StringReader("func ) ;\n" + large())), 64));
+        parser.parse();
+        assertTrue(parser.hasError());
+        awaitNoLexer();
+    }
+
+    // the tokens made before the failure come through first
+    @Test
+    void failedLexer() throws InterruptedException
+    {
+        final IllegalStateException broken = new IllegalStateException("broken");
+        Scanner scanner = new Scanner(new StringReader(large())) {
+            private int count;
+
+            @Override
+            public Token next()
+            {
+                if (++count > 100)
+                    throw broken;
+                return super.next();
+            }
+        };
+        Scanner expected = new Scanner(new StringReader(large()));
+        TokenPipeline pipeline = new TokenPipeline(scanner, 64);
+        for (int i = 0; i < 100; i++)
+            assertEquals(expected.next().toString(), pipeline.next().toString());
+        RuntimeException failure = assertThrows(RuntimeException.class, pipeline::next);
+        assertSame(broken, failure.getCause());
+        awaitNoLexer();
+    }
+}
@@ -0,0 +1,44 @@
+package types;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class TypeInternerTest {
+
+    @Test
+    void equalStructuresAreOneObject()
+    {
+        assertSame(IntType.INSTANCE, Type.getBaseType("int"));
+        assertSame(ArrayType.of(4, ArrayType.of(3, FloatType.INSTANCE)), ArrayType.of(4, ArrayType.of(3, FloatType.INSTANCE)));
+        assertSame(TypeList.of(IntType.INSTANCE, BoolType.INSTANCE), TypeList.of(IntType.INSTANCE, BoolType.INSTANCE));
+        assertSame(FuncType.predefinedFunc("printInt"), FuncType.of(TypeList.of(IntType.INSTANCE), VoidType.INSTANCE));
+        assertSame(AddressType.of(IntType.INSTANCE), AddressType.of(IntType.INSTANCE));
+        assertNotSame(ArrayType.of(4, IntType.INSTANCE), ArrayType.of(5, IntType.INSTANCE));
+        assertTrue(TypeList.of(IntType.INSTANCE).equivalent(TypeList.of(IntType.INSTANCE)));
+        assertFalse(TypeList.of(IntType.INSTANCE).equivalent(TypeList.of(FloatType.INSTANCE)));
+    }
+
+    // a program with errors is compiled again and again in an editor, its errors must not pile up
+    @Test
+    void typesHoldingErrorsAreNotKept()
+    {
+        TypeList.of(IntType.INSTANCE, IntType.INSTANCE);
+        int size = TypeInterner.size();
+        for (int i = 0; i < 1000; i++) {
+            ErrorType error = new ErrorType("Cannot add int with bool.");
+            TypeList arguments = TypeList.of(IntType.INSTANCE, error);
+            ArrayType array = ArrayType.of(2, ArrayType.of(3, error));
+            FuncType function = FuncType.of(arguments, VoidType.INSTANCE);
+            assertSame(arguments, function.arguments());
+            assertFalse(arguments.equivalent(TypeList.of(IntType.INSTANCE, new ErrorType("Cannot add int with bool."))));
+            assertNotSame(array, ArrayType.of(2, ArrayType.of(3, error)));
+            assertSame(TypeList.of(IntType.INSTANCE, IntType.INSTANCE), TypeList.of(IntType.INSTANCE, IntType.INSTANCE));
+        }
+        assertEquals(size, TypeInterner.size());
+    }
+}
@@ -13,6 +13,11 @@ public class AddressOf extends Command implements Expression {
 	{
 		return symbol;
 	}
+
+	public void setSymbol(crux.Symbol symbol)
+	{
+		this.symbol = symbol;
+	}
 	
 	@Override
 	public String toString()
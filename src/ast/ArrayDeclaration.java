@@ -16,6 +16,11 @@ public class ArrayDeclaration extends Command implements Declaration, Statement
 	public Symbol symbol() {
 		return symbol;
 	}
+
+	public void setSymbol(Symbol symbol)
+	{
+		this.symbol = symbol;
+	}
 	
 	@Override
 	public String toString() {
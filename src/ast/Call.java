@@ -17,6 +17,11 @@ public class Call extends Command implements Statement, Expression {
 	{
 		return func;
 	}
+
+	public void setFunction(Symbol func)
+	{
+		this.func = func;
+	}
 	
 	public ExpressionList arguments()
 	{
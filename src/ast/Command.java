@@ -3,9 +3,18 @@ package ast;
 import crux.Token;
 
 public abstract class Command implements Visitable {
+
+	// Nodes parsed from a TokenBuffer without positions carry their source
+	// offset in place of the character position, under this line number.
+	// A crux.LineMap resolves the offset once a diagnostic needs it.
+	public static final int OFFSET_ONLY = 0;
+
+	// Nodes materialized from a FlatTree carry their id in it, all others this
+	public static final int NO_ID = -1;
 	
 	private int lineNum;
 	private int charPos;
+	private int nodeId = NO_ID;
 	
 	public Command(int lineNum, int charPos)
 	{
@@ -22,19 +31,52 @@ public abstract class Command implements Visitable {
 	{
 		return charPos;
 	}
+
+	public boolean hasOffsetOnly()
+	{
+		return lineNum == OFFSET_ONLY;
+	}
+
+	public int sourceOffset()
+	{
+		return charPos;
+	}
+
+	public int nodeId()
+	{
+		return nodeId;
+	}
+
+	void setNodeId(int nodeId)
+	{
+		this.nodeId = nodeId;
+	}
+
+	// a node with only an offset moves by offsetShift characters, any other by lineShift lines
+	void move(int lineShift, int offsetShift)
+	{
+		if (hasOffsetOnly())
+			charPos += offsetShift;
+		else
+			lineNum += lineShift;
+	}
 	
 	@Override
 	public String toString()
 	{
+		if (hasOffsetOnly())
+			return this.getClass().getName() + "(@" + sourceOffset() + ")";
 		return this.getClass().getName() + "(" + lineNumber() + "," + charPosition() + ")";
 	}
 
 	public static Expression newExpression(Expression leftSide, Token op, Expression rightSide)
 	{
-		int lineNum = op.lineNumber();
-		int charPos = op.charPosition();
-		
-		switch(op.kind())
+		return newExpression(leftSide, op.kind(), op.lineNumber(), op.charPosition(), rightSide);
+	}
+
+	public static Expression newExpression(Expression leftSide, Token.Kind op, int lineNum, int charPos, Expression rightSide)
+	{
+		switch(op)
 		{
 		case ADD: return new Addition(lineNum, charPos, leftSide, rightSide);
 		case SUB: return new Subtraction(lineNum, charPos, leftSide, rightSide);
@@ -52,19 +94,25 @@ public abstract class Command implements Visitable {
 		case GREATER_EQUAL: return new Comparison(lineNum, charPos, leftSide, Comparison.Operation.GE, rightSide);
 		case GREATER_THAN:  return new Comparison(lineNum, charPos, leftSide, Comparison.Operation.GT, rightSide);
 		
-		default: return new Error(op.lineNumber(), op.charPosition(), "Unknown Operation: " + op);
+		default: return new Error(lineNum, charPos, "Unknown Operation: " + op);
 		}
 	}
 	
 	public static Expression newLiteral(Token tok)
 	{
-		switch(tok.kind())
+		return newLiteral(tok.kind(), tok.value(), tok.lineNumber(), tok.charPosition());
+	}
+
+	// value is the one decoded by the Scanner, see Token.value()
+	public static Expression newLiteral(Token.Kind kind, int value, int lineNum, int charPos)
+	{
+		switch(kind)
 		{
-		case TRUE: return new LiteralBool(tok.lineNumber(), tok.charPosition(), LiteralBool.Value.TRUE);
-		case FALSE: return new LiteralBool(tok.lineNumber(), tok.charPosition(), LiteralBool.Value.FALSE);
-		case INTEGER: return new LiteralInt(tok.lineNumber(), tok.charPosition(), Integer.valueOf(tok.lexeme()));
-		case FLOAT: return new LiteralFloat(tok.lineNumber(), tok.charPosition(), Float.valueOf(tok.lexeme()));
-		default: return new Error(tok.lineNumber(), tok.charPosition(), "Unknown Operation: " + tok);
+		case TRUE: return new LiteralBool(lineNum, charPos, LiteralBool.Value.TRUE);
+		case FALSE: return new LiteralBool(lineNum, charPos, LiteralBool.Value.FALSE);
+		case INTEGER: return new LiteralInt(lineNum, charPos, value);
+		case FLOAT: return new LiteralFloat(lineNum, charPos, Float.intBitsToFloat(value));
+		default: return new Error(lineNum, charPos, "Unknown Operation: " + kind);
 		}
 	}
 }
@@ -17,6 +17,13 @@ public class DeclarationList extends Command implements Iterable<Declaration> {
 		super(lineNum, charPos);
 		list = new ArrayList<Declaration>();
 	}
+
+	// a FlatTree hands in a list that materializes each declaration when it is asked for
+	DeclarationList(int lineNum, int charPos, List<Declaration> list)
+	{
+		super(lineNum, charPos);
+		this.list = list;
+	}
 	
 	public void add(Declaration command)
 	{
@@ -24,6 +31,23 @@ public class DeclarationList extends Command implements Iterable<Declaration> {
 	}
 
 
+	public int size()
+	{
+		return list.size();
+	}
+
+	public Declaration get(int index)
+	{
+		return list.get(index);
+	}
+
+	// replaces the declarations [from, to) by those given, keeping the others
+	public void replace(int from, int to, List<Declaration> declarations)
+	{
+		list.subList(from, to).clear();
+		list.addAll(from, declarations);
+	}
+
 	public List<Symbol> toSymbolList() {
 		List<Symbol> symbolList = new ArrayList<Symbol>();
 		for (Declaration declaration : list) {
@@ -33,11 +57,11 @@ public class DeclarationList extends Command implements Iterable<Declaration> {
 	}
 
 	public TypeList toTypeList() {
-		TypeList typeList = new TypeList();
-		for (Declaration declaration : list) {
-			typeList.append(declaration.symbol().type());
+		Type[] types = new Type[list.size()];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = list.get(i).symbol().type();
 		}
-		return typeList;
+		return TypeList.of(types);
 	}
 
 	@Override
@@ -0,0 +1,814 @@
+package ast;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import crux.Symbol;
+import types.Type;
+
+/* A syntax tree packed into parallel primitive arrays.
+ *
+ * Node i is described by its kind, its first child and its next sibling
+ * (NONE where there is none), one int of data, and its position. The data
+ * is the id of the node's Symbol, the value of a literal, the operation of
+ * a Comparison or the index of an Error's message. The position is the
+ * character position, or the source offset of a node parsed without
+ * positions, and line numbers are only stored once a node has one. Nodes
+ * are numbered in preorder, so the subtree of a node is the run of ids from
+ * it to its last descendant.
+ *
+ * A TypeChecker walks these arrays as they are and keeps the type of each
+ * node by its id, without making any nodes. Other visitors go through
+ * accept(), which turns the tree back into ordinary nodes, one top-level
+ * declaration at a time. Those carry their id as Command.nodeId(), so that
+ * a CodeGen finds the types of the checked tree on them.
+ */
+public final class FlatTree {
+
+	public static final int NONE = -1;
+
+	public enum NodeKind {
+		DECLARATION_LIST,
+		STATEMENT_LIST,
+		EXPRESSION_LIST,
+		ADDRESS_OF,
+		LITERAL_BOOL,
+		LITERAL_FLOAT,
+		LITERAL_INT,
+		VARIABLE_DECLARATION,
+		ARRAY_DECLARATION,
+		FUNCTION_DEFINITION,
+		ARGUMENT,             // the children of a FUNCTION_DEFINITION before its body
+		ADDITION,
+		SUBTRACTION,
+		MULTIPLICATION,
+		DIVISION,
+		LOGICAL_AND,
+		LOGICAL_OR,
+		LOGICAL_NOT,
+		COMPARISON,
+		DEREFERENCE,
+		INDEX,
+		ASSIGNMENT,
+		CALL,
+		IF_ELSE_BRANCH,
+		WHILE_LOOP,
+		RETURN,
+		ERROR
+	}
+
+	private static final NodeKind[] KINDS = NodeKind.values();
+	private static final Comparison.Operation[] OPERATIONS = Comparison.Operation.values();
+	private static final LiteralBool.Value[] BOOL_VALUES = LiteralBool.Value.values();
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private static final EnumSet<NodeKind> DECLARATIONS = EnumSet.of(NodeKind.VARIABLE_DECLARATION,
+			NodeKind.ARRAY_DECLARATION, NodeKind.FUNCTION_DEFINITION, NodeKind.ERROR);
+	private static final EnumSet<NodeKind> STATEMENTS = EnumSet.of(NodeKind.VARIABLE_DECLARATION,
+			NodeKind.ARRAY_DECLARATION, NodeKind.CALL, NodeKind.ASSIGNMENT, NodeKind.IF_ELSE_BRANCH,
+			NodeKind.WHILE_LOOP, NodeKind.RETURN, NodeKind.ERROR);
+	private static final EnumSet<NodeKind> EXPRESSIONS = EnumSet.of(NodeKind.ADDRESS_OF,
+			NodeKind.LITERAL_BOOL, NodeKind.LITERAL_FLOAT, NodeKind.LITERAL_INT, NodeKind.ADDITION,
+			NodeKind.SUBTRACTION, NodeKind.MULTIPLICATION, NodeKind.DIVISION, NodeKind.LOGICAL_AND,
+			NodeKind.LOGICAL_OR, NodeKind.LOGICAL_NOT, NodeKind.COMPARISON, NodeKind.DEREFERENCE,
+			NodeKind.INDEX, NodeKind.CALL, NodeKind.ERROR);
+	private static final EnumSet<NodeKind> STATEMENT_LIST = EnumSet.of(NodeKind.STATEMENT_LIST);
+	private static final EnumSet<NodeKind> EXPRESSION_LIST = EnumSet.of(NodeKind.EXPRESSION_LIST);
+
+	private int size;
+	private byte[] kinds = new byte[INITIAL_CAPACITY];
+	private int[] firstChild = new int[INITIAL_CAPACITY];
+	private int[] nextSibling = new int[INITIAL_CAPACITY];
+	private int[] data = new int[INITIAL_CAPACITY];
+	private int[] positions = new int[INITIAL_CAPACITY];
+	private int[] lines;
+	private int root = NONE;
+
+	private Symbol[] symbols = new Symbol[64];
+	private int symbolCount;
+	private IdentityHashMap<Symbol, Integer> symbolIds = new IdentityHashMap<Symbol, Integer>();
+	private final List<String> messages = new ArrayList<String>();
+
+	private final Flattener flattener = new Flattener();
+
+	public static FlatTree of(Command root)
+	{
+		FlatTree tree = new FlatTree();
+		tree.setRoot(tree.add(root));
+		tree.trimToSize();
+		return tree;
+	}
+
+// Building ==========================================
+	// Adds node and everything below it, and returns the id of node
+	public int add(Command node)
+	{
+		return flattener.flatten(node);
+	}
+
+	// Makes child the child of parent that follows previous, or the first one if previous is NONE
+	public void link(int parent, int previous, int child)
+	{
+		if (previous == NONE)
+			firstChild[parent] = child;
+		else
+			nextSibling[previous] = child;
+	}
+
+	public void setRoot(int id)
+	{
+		root = id;
+	}
+
+	// Drops the room kept for more nodes and symbols, and the index for finding symbols again
+	public void trimToSize()
+	{
+		kinds = Arrays.copyOf(kinds, size);
+		firstChild = Arrays.copyOf(firstChild, size);
+		nextSibling = Arrays.copyOf(nextSibling, size);
+		data = Arrays.copyOf(data, size);
+		positions = Arrays.copyOf(positions, size);
+		if (lines != null)
+			lines = Arrays.copyOf(lines, size);
+		symbols = Arrays.copyOf(symbols, symbolCount);
+		symbolIds = null;
+	}
+
+	private int newNode(NodeKind kind, Command node, int value)
+	{
+		if (size == kinds.length) {
+			int capacity = Math.max(INITIAL_CAPACITY, size * 2);
+			kinds = Arrays.copyOf(kinds, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			nextSibling = Arrays.copyOf(nextSibling, capacity);
+			data = Arrays.copyOf(data, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+			if (lines != null)
+				lines = Arrays.copyOf(lines, capacity);
+		}
+		int id = size++;
+		kinds[id] = (byte) kind.ordinal();
+		firstChild[id] = NONE;
+		nextSibling[id] = NONE;
+		data[id] = value;
+		positions[id] = node.charPosition();
+		if (node.lineNumber() != Command.OFFSET_ONLY) {
+			// the lines of the nodes before are all OFFSET_ONLY, which is 0
+			if (lines == null)
+				lines = new int[kinds.length];
+			lines[id] = node.lineNumber();
+		}
+		return id;
+	}
+
+	private int symbolId(Symbol symbol)
+	{
+		if (symbolIds == null) {
+			symbolIds = new IdentityHashMap<Symbol, Integer>();
+			for (int i = 0; i < symbolCount; i++)
+				symbolIds.put(symbols[i], i);
+		}
+		Integer id = symbolIds.get(symbol);
+		if (id != null)
+			return id;
+		if (symbolCount == symbols.length)
+			symbols = Arrays.copyOf(symbols, Math.max(64, symbolCount * 2));
+		symbols[symbolCount] = symbol;
+		symbolIds.put(symbol, symbolCount);
+		return symbolCount++;
+	}
+
+	// each child is linked before it is visited, to the id the next node gets
+	private final class Flattener implements CommandVisitor {
+
+		private final Traversal traversal = new Traversal();
+		private int[] ids = new int[64];
+		private int depth;
+		private int added;
+
+		int flatten(Visitable node)
+		{
+			traversal.run(node, this);
+			return added;
+		}
+
+		private void add(NodeKind kind, Command node, int value, Visitable... children)
+		{
+			int phase = traversal.phase();
+			if (phase == 0)
+				push(newNode(kind, node, value));
+			if (phase < children.length) {
+				link(ids[depth - 1], phase == 0 ? NONE : added, size);
+				traversal.descend(children[phase]);
+				return;
+			}
+			added = ids[--depth];
+		}
+
+		private void addList(NodeKind kind, Command node, Iterable<? extends Visitable> items)
+		{
+			int phase = traversal.phase();
+			if (phase == 0)
+				push(newNode(kind, node, 0));
+			if (traversal.descendNext(items)) {
+				link(ids[depth - 1], phase == 0 ? NONE : added, size);
+				return;
+			}
+			added = ids[--depth];
+		}
+
+		private void push(int id)
+		{
+			if (depth == ids.length)
+				ids = Arrays.copyOf(ids, depth * 2);
+			ids[depth++] = id;
+		}
+
+		@Override
+		public void visit(ExpressionList node) {
+			addList(NodeKind.EXPRESSION_LIST, node, node);
+		}
+
+		@Override
+		public void visit(DeclarationList node) {
+			addList(NodeKind.DECLARATION_LIST, node, node);
+		}
+
+		@Override
+		public void visit(StatementList node) {
+			addList(NodeKind.STATEMENT_LIST, node, node);
+		}
+
+		@Override
+		public void visit(AddressOf node) {
+			add(NodeKind.ADDRESS_OF, node, symbolId(node.symbol()));
+		}
+
+		@Override
+		public void visit(LiteralBool node) {
+			add(NodeKind.LITERAL_BOOL, node, node.value().ordinal());
+		}
+
+		@Override
+		public void visit(LiteralFloat node) {
+			add(NodeKind.LITERAL_FLOAT, node, Float.floatToRawIntBits(node.value()));
+		}
+
+		@Override
+		public void visit(LiteralInt node) {
+			add(NodeKind.LITERAL_INT, node, node.value());
+		}
+
+		@Override
+		public void visit(VariableDeclaration node) {
+			add(NodeKind.VARIABLE_DECLARATION, node, symbolId(node.symbol()));
+		}
+
+		@Override
+		public void visit(ArrayDeclaration node) {
+			add(NodeKind.ARRAY_DECLARATION, node, symbolId(node.symbol()));
+		}
+
+		@Override
+		public void visit(FunctionDefinition node) {
+			if (traversal.phase() > 0) {
+				added = ids[--depth];
+				return;
+			}
+			int id = newNode(NodeKind.FUNCTION_DEFINITION, node, symbolId(node.function()));
+			int previous = NONE;
+			for (Symbol argument : node.arguments()) {
+				int argumentId = newNode(NodeKind.ARGUMENT, node, symbolId(argument));
+				link(id, previous, argumentId);
+				previous = argumentId;
+			}
+			push(id);
+			link(id, previous, size);
+			traversal.descend(node.body());
+		}
+
+		@Override
+		public void visit(Addition node) {
+			add(NodeKind.ADDITION, node, 0, node.leftSide(), node.rightSide());
+		}
+
+		@Override
+		public void visit(Subtraction node) {
+			add(NodeKind.SUBTRACTION, node, 0, node.leftSide(), node.rightSide());
+		}
+
+		@Override
+		public void visit(Multiplication node) {
+			add(NodeKind.MULTIPLICATION, node, 0, node.leftSide(), node.rightSide());
+		}
+
+		@Override
+		public void visit(Division node) {
+			add(NodeKind.DIVISION, node, 0, node.leftSide(), node.rightSide());
+		}
+
+		@Override
+		public void visit(LogicalAnd node) {
+			add(NodeKind.LOGICAL_AND, node, 0, node.leftSide(), node.rightSide());
+		}
+
+		@Override
+		public void visit(LogicalOr node) {
+			add(NodeKind.LOGICAL_OR, node, 0, node.leftSide(), node.rightSide());
+		}
+
+		@Override
+		public void visit(LogicalNot node) {
+			add(NodeKind.LOGICAL_NOT, node, 0, node.expression());
+		}
+
+		@Override
+		public void visit(Comparison node) {
+			add(NodeKind.COMPARISON, node, node.operation().ordinal(), node.leftSide(), node.rightSide());
+		}
+
+		@Override
+		public void visit(Dereference node) {
+			add(NodeKind.DEREFERENCE, node, 0, node.expression());
+		}
+
+		@Override
+		public void visit(Index node) {
+			add(NodeKind.INDEX, node, 0, node.base(), node.amount());
+		}
+
+		@Override
+		public void visit(Assignment node) {
+			add(NodeKind.ASSIGNMENT, node, 0, node.destination(), node.source());
+		}
+
+		@Override
+		public void visit(Call node) {
+			add(NodeKind.CALL, node, symbolId(node.function()), node.arguments());
+		}
+
+		@Override
+		public void visit(IfElseBranch node) {
+			add(NodeKind.IF_ELSE_BRANCH, node, 0, node.condition(), node.thenBlock(), node.elseBlock());
+		}
+
+		@Override
+		public void visit(WhileLoop node) {
+			add(NodeKind.WHILE_LOOP, node, 0, node.condition(), node.body());
+		}
+
+		@Override
+		public void visit(Return node) {
+			add(NodeKind.RETURN, node, 0, node.argument());
+		}
+
+		@Override
+		public void visit(Error node) {
+			messages.add(node.message());
+			add(NodeKind.ERROR, node, messages.size() - 1);
+		}
+	}
+
+// Access ==========================================
+	public int size()
+	{
+		return size;
+	}
+
+	public int root()
+	{
+		return root;
+	}
+
+	public NodeKind kind(int id)
+	{
+		return KINDS[kinds[id]];
+	}
+
+	public int firstChild(int id)
+	{
+		return firstChild[id];
+	}
+
+	public int nextSibling(int id)
+	{
+		return nextSibling[id];
+	}
+
+	public int data(int id)
+	{
+		return data[id];
+	}
+
+	public Symbol symbol(int id)
+	{
+		return symbols[data[id]];
+	}
+
+	public String message(int id)
+	{
+		return messages.get(data[id]);
+	}
+
+	public Comparison.Operation operation(int id)
+	{
+		return OPERATIONS[data[id]];
+	}
+
+	public int lineNumber(int id)
+	{
+		return lines == null ? Command.OFFSET_ONLY : lines[id];
+	}
+
+	public int charPosition(int id)
+	{
+		return positions[id];
+	}
+
+	private int[] children(int id)
+	{
+		int count = 0;
+		for (int child = firstChild[id]; child != NONE; child = nextSibling[child])
+			count++;
+		int[] children = new int[count];
+		count = 0;
+		for (int child = firstChild[id]; child != NONE; child = nextSibling[child])
+			children[count++] = child;
+		return children;
+	}
+
+// Binary Image ==========================================
+	/* Writes the columns of the tree, then its symbols with their types and
+	 * the messages of its Errors. read() takes the columns back in bulk from
+	 * a buffer, such as a memory-mapped file, without creating any nodes.
+	 * Symbols come back as plain crux.Symbols, one for each written.
+	 *
+	 * read() returns null for an image write() cannot have made: a count
+	 * past the end of the buffer, an id or a kind out of range, nodes below
+	 * the root that are not numbered in preorder, or a node whose children
+	 * or data do not fit its kind. Everything materialize() relies on is
+	 * checked, so a corrupt image is only ever a cache miss.
+	 */
+	public void write(DataOutputStream out) throws IOException
+	{
+		out.writeInt(size);
+		out.writeInt(root);
+		out.writeBoolean(lines != null);
+		out.write(kinds, 0, size);
+		writeInts(out, firstChild, size);
+		writeInts(out, nextSibling, size);
+		writeInts(out, data, size);
+		writeInts(out, positions, size);
+		if (lines != null)
+			writeInts(out, lines, size);
+		out.writeInt(symbolCount);
+		for (int i = 0; i < symbolCount; i++) {
+			writeString(out, symbols[i].name());
+			Type.write(symbols[i].type(), out);
+		}
+		out.writeInt(messages.size());
+		for (String message : messages)
+			writeString(out, message);
+	}
+
+	public static FlatTree read(ByteBuffer in)
+	{
+		try {
+			FlatTree tree = readColumns(in);
+			return tree.isWellFormed() ? tree : null;
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static FlatTree readColumns(ByteBuffer in)
+	{
+		FlatTree tree = new FlatTree();
+		int size = readCount(in, 1 + 4 * 4);
+		tree.size = size;
+		tree.root = in.getInt();
+		boolean hasLines = in.get() != 0;
+		tree.kinds = new byte[size];
+		in.get(tree.kinds);
+		tree.firstChild = readInts(in, size);
+		tree.nextSibling = readInts(in, size);
+		tree.data = readInts(in, size);
+		tree.positions = readInts(in, size);
+		tree.lines = hasLines ? readInts(in, size) : null;
+		int symbolCount = readCount(in, 4 + 1);
+		tree.symbols = new Symbol[symbolCount];
+		for (int i = 0; i < symbolCount; i++) {
+			Symbol symbol = new Symbol(readString(in));
+			symbol.setType(Type.read(in));
+			tree.symbols[i] = symbol;
+		}
+		tree.symbolCount = symbolCount;
+		tree.symbolIds = null;
+		for (int count = readCount(in, 4); count > 0; count--)
+			tree.messages.add(readString(in));
+		return tree;
+	}
+
+	// a count of items of at least itemSize bytes each, that the rest of the buffer can hold
+	private static int readCount(ByteBuffer in, int itemSize)
+	{
+		int count = in.getInt();
+		if (count < 0 || (long) count * itemSize > in.remaining())
+			throw new IllegalArgumentException("The count " + count + " runs past the end of the image.");
+		return count;
+	}
+
+	private boolean isWellFormed()
+	{
+		if (root < 0 || root >= size || nextSibling[root] != NONE)
+			return false;
+		for (int id = 0; id < size; id++) {
+			if (kinds[id] < 0 || kinds[id] >= KINDS.length)
+				return false;
+			// children and siblings come after a node, so no chain of links runs in a circle
+			if (firstChild[id] != NONE && (firstChild[id] <= id || firstChild[id] >= size))
+				return false;
+			if (nextSibling[id] != NONE && (nextSibling[id] <= id || nextSibling[id] >= size))
+				return false;
+		}
+		if (kind(root) == NodeKind.ARGUMENT)
+			return false;
+
+		// a stack of the nodes still to visit, each node pushes its next sibling and then its first child
+		int[] pending = new int[64];
+		int count = 0;
+		pending[count++] = root;
+		int expected = root;
+		while (count > 0) {
+			int id = pending[--count];
+			if (id != expected++ || !fits(id))
+				return false;
+			if (count + 2 > pending.length)
+				pending = Arrays.copyOf(pending, pending.length * 2);
+			if (id != root && nextSibling[id] != NONE)
+				pending[count++] = nextSibling[id];
+			if (firstChild[id] != NONE)
+				pending[count++] = firstChild[id];
+		}
+		return true;
+	}
+
+	// whether the children and the data of node id are those of a node of its kind
+	private boolean fits(int id)
+	{
+		int first = firstChild[id];
+		int value = data[id];
+		switch (kind(id)) {
+		case DECLARATION_LIST:
+			return childrenAreAll(first, DECLARATIONS);
+		case STATEMENT_LIST:
+			return childrenAreAll(first, STATEMENTS);
+		case EXPRESSION_LIST:
+			return childrenAreAll(first, EXPRESSIONS);
+		case LITERAL_BOOL:
+			return first == NONE && value >= 0 && value < BOOL_VALUES.length;
+		case LITERAL_FLOAT:
+		case LITERAL_INT:
+			return first == NONE;
+		case ADDRESS_OF:
+		case VARIABLE_DECLARATION:
+		case ARRAY_DECLARATION:
+		case ARGUMENT:
+			return first == NONE && isSymbol(value);
+		case FUNCTION_DEFINITION: {
+			int child = first;
+			while (child != NONE && kind(child) == NodeKind.ARGUMENT)
+				child = nextSibling[child];
+			return isSymbol(value) && child != NONE && childrenAre(child, STATEMENT_LIST);
+		}
+		case ADDITION:
+		case SUBTRACTION:
+		case MULTIPLICATION:
+		case DIVISION:
+		case LOGICAL_AND:
+		case LOGICAL_OR:
+		case INDEX:
+		case ASSIGNMENT:
+			return childrenAre(first, EXPRESSIONS, EXPRESSIONS);
+		case COMPARISON:
+			return value >= 0 && value < OPERATIONS.length && childrenAre(first, EXPRESSIONS, EXPRESSIONS);
+		case LOGICAL_NOT:
+		case DEREFERENCE:
+		case RETURN:
+			return childrenAre(first, EXPRESSIONS);
+		case CALL:
+			return isSymbol(value) && childrenAre(first, EXPRESSION_LIST);
+		case IF_ELSE_BRANCH:
+			return childrenAre(first, EXPRESSIONS, STATEMENT_LIST, STATEMENT_LIST);
+		case WHILE_LOOP:
+			return childrenAre(first, EXPRESSIONS, STATEMENT_LIST);
+		case ERROR:
+			return first == NONE && value >= 0 && value < messages.size();
+		}
+		return false;
+	}
+
+	private boolean isSymbol(int value)
+	{
+		return value >= 0 && value < symbolCount;
+	}
+
+	// exactly one child of each of the kinds, in order
+	@SafeVarargs
+	private final boolean childrenAre(int child, EnumSet<NodeKind>... kinds)
+	{
+		for (EnumSet<NodeKind> kind : kinds) {
+			if (child == NONE || !kind.contains(kind(child)))
+				return false;
+			child = nextSibling[child];
+		}
+		return child == NONE;
+	}
+
+	private boolean childrenAreAll(int child, EnumSet<NodeKind> kinds)
+	{
+		for (; child != NONE; child = nextSibling[child]) {
+			if (!kinds.contains(kind(child)))
+				return false;
+		}
+		return true;
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values, int count) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		for (int i = 0; i < count; i++) {
+			if (!buffer.hasRemaining()) {
+				out.write(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+			buffer.putInt(values[i]);
+		}
+		out.write(buffer.array(), 0, buffer.position());
+	}
+
+	private static int[] readInts(ByteBuffer in, int count)
+	{
+		int[] values = new int[count];
+		in.asIntBuffer().get(values);
+		in.position(in.position() + count * 4);
+		return values;
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException
+	{
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer in)
+	{
+		byte[] bytes = new byte[readCount(in, 1)];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+// Materializing ==========================================
+	// Visits the tree, a DeclarationList root materializes its declarations one at a time
+	public void accept(CommandVisitor visitor)
+	{
+		rootNode().accept(visitor);
+	}
+
+	// The root, a DeclarationList root materializes its declarations when they are read
+	public Command rootNode()
+	{
+		if (kind(root) != NodeKind.DECLARATION_LIST)
+			return node(root);
+		final int[] declarations = children(root);
+		DeclarationList list = new DeclarationList(lineNumber(root), charPosition(root), new AbstractList<Declaration>() {
+			@Override
+			public Declaration get(int index)
+			{
+				return (Declaration) node(declarations[index]);
+			}
+
+			@Override
+			public int size()
+			{
+				return declarations.length;
+			}
+		});
+		list.setNodeId(root);
+		return list;
+	}
+
+	// Returns a new node for id, and new nodes for everything below it,
+	// making the subtree backwards so that children come before their parent
+	public Command node(int id)
+	{
+		int end = id;
+		while (firstChild[end] != NONE) {
+			end = firstChild[end];
+			while (nextSibling[end] != NONE)
+				end = nextSibling[end];
+		}
+		Command[] nodes = new Command[end + 1 - id];
+		for (int i = end; i >= id; i--) {
+			if (kind(i) == NodeKind.ARGUMENT)
+				continue;
+			Command node = materialize(i, nodes, id);
+			node.setNodeId(i);
+			nodes[i - id] = node;
+		}
+		return nodes[0];
+	}
+
+	private Command materialize(int id, Command[] nodes, int base)
+	{
+		int lineNum = lineNumber(id);
+		int charPos = positions[id];
+		int first = firstChild[id];
+		switch (kind(id)) {
+		case DECLARATION_LIST: {
+			DeclarationList list = new DeclarationList(lineNum, charPos);
+			for (int child = first; child != NONE; child = nextSibling[child])
+				list.add((Declaration) nodes[child - base]);
+			return list;
+		}
+		case STATEMENT_LIST: {
+			StatementList list = new StatementList(lineNum, charPos);
+			for (int child = first; child != NONE; child = nextSibling[child])
+				list.add((Statement) nodes[child - base]);
+			return list;
+		}
+		case EXPRESSION_LIST: {
+			ExpressionList list = new ExpressionList(lineNum, charPos);
+			for (int child = first; child != NONE; child = nextSibling[child])
+				list.add((Expression) nodes[child - base]);
+			return list;
+		}
+		case ADDRESS_OF:
+			return new AddressOf(lineNum, charPos, symbol(id));
+		case LITERAL_BOOL:
+			return new LiteralBool(lineNum, charPos, BOOL_VALUES[data[id]]);
+		case LITERAL_FLOAT:
+			return new LiteralFloat(lineNum, charPos, Float.intBitsToFloat(data[id]));
+		case LITERAL_INT:
+			return new LiteralInt(lineNum, charPos, data[id]);
+		case VARIABLE_DECLARATION:
+			return new VariableDeclaration(lineNum, charPos, symbol(id));
+		case ARRAY_DECLARATION:
+			return new ArrayDeclaration(lineNum, charPos, symbol(id));
+		case FUNCTION_DEFINITION: {
+			List<Symbol> arguments = new ArrayList<Symbol>();
+			int child = first;
+			for (; kind(child) == NodeKind.ARGUMENT; child = nextSibling[child])
+				arguments.add(symbol(child));
+			return new FunctionDefinition(lineNum, charPos, symbol(id), arguments, (StatementList) nodes[child - base]);
+		}
+		case ARGUMENT:
+			throw new IllegalArgumentException("Node " + id + " is an argument of a FUNCTION_DEFINITION, not a node of its own.");
+		case ADDITION:
+			return new Addition(lineNum, charPos, (Expression) nodes[first - base], (Expression) nodes[nextSibling[first] - base]);
+		case SUBTRACTION:
+			return new Subtraction(lineNum, charPos, (Expression) nodes[first - base], (Expression) nodes[nextSibling[first] - base]);
+		case MULTIPLICATION:
+			return new Multiplication(lineNum, charPos, (Expression) nodes[first - base], (Expression) nodes[nextSibling[first] - base]);
+		case DIVISION:
+			return new Division(lineNum, charPos, (Expression) nodes[first - base], (Expression) nodes[nextSibling[first] - base]);
+		case LOGICAL_AND:
+			return new LogicalAnd(lineNum, charPos, (Expression) nodes[first - base], (Expression) nodes[nextSibling[first] - base]);
+		case LOGICAL_OR:
+			return new LogicalOr(lineNum, charPos, (Expression) nodes[first - base], (Expression) nodes[nextSibling[first] - base]);
+		case LOGICAL_NOT:
+			return new LogicalNot(lineNum, charPos, (Expression) nodes[first - base]);
+		case COMPARISON:
+			return new Comparison(lineNum, charPos, (Expression) nodes[first - base], OPERATIONS[data[id]], (Expression) nodes[nextSibling[first] - base]);
+		case DEREFERENCE:
+			return new Dereference(lineNum, charPos, (Expression) nodes[first - base]);
+		case INDEX:
+			return new Index(lineNum, charPos, (Expression) nodes[first - base], (Expression) nodes[nextSibling[first] - base]);
+		case ASSIGNMENT:
+			return new Assignment(lineNum, charPos, (Expression) nodes[first - base], (Expression) nodes[nextSibling[first] - base]);
+		case CALL:
+			return new Call(lineNum, charPos, symbol(id), (ExpressionList) nodes[first - base]);
+		case IF_ELSE_BRANCH: {
+			int thenBlock = nextSibling[first];
+			return new IfElseBranch(lineNum, charPos, (Expression) nodes[first - base], (StatementList) nodes[thenBlock - base], (StatementList) nodes[nextSibling[thenBlock] - base]);
+		}
+		case WHILE_LOOP:
+			return new WhileLoop(lineNum, charPos, (Expression) nodes[first - base], (StatementList) nodes[nextSibling[first] - base]);
+		case RETURN:
+			return new Return(lineNum, charPos, (Expression) nodes[first - base]);
+		case ERROR:
+			return new Error(lineNum, charPos, messages.get(data[id]));
+		}
+		throw new IllegalStateException("Unknown node kind " + kind(id) + ".");
+	}
+}
@@ -22,6 +22,11 @@ public class FunctionDefinition extends Command implements Declaration {
 	{
 		return func;
 	}
+
+	public void setFunction(Symbol func)
+	{
+		this.func = func;
+	}
 	
 	public StatementList body()
 	{
@@ -0,0 +1,180 @@
+package ast;
+
+/* Moves all nodes of a tree past an edit of its source, in place.
+ *
+ * A crux.IncrementalParser keeps the declarations after an edit as they
+ * are. If the edit added or removed lines, their nodes move down or up by
+ * as many lines; nodes parsed without positions move by the characters the
+ * edit added or removed instead. Character positions stay as they are,
+ * the parser only keeps declarations whose tokens kept theirs.
+ *
+ * The tree is walked with a Traversal, so that it may be nested as
+ * deeply as the Parser and the checkers allow.
+ */
+public final class PositionShifter implements CommandVisitor {
+
+	private final int lineShift;
+	private final int offsetShift;
+	private final Traversal traversal = new Traversal();
+
+	private PositionShifter(int lineShift, int offsetShift)
+	{
+		this.lineShift = lineShift;
+		this.offsetShift = offsetShift;
+	}
+
+	public static void shift(Command tree, int lineShift, int offsetShift)
+	{
+		if (lineShift != 0 || offsetShift != 0) {
+			PositionShifter shifter = new PositionShifter(lineShift, offsetShift);
+			shifter.traversal.run(tree, shifter);
+		}
+	}
+
+	// moves node at its first step, then descends into its children one per step
+	private void move(Command node, Object... children)
+	{
+		int phase = traversal.phase();
+		if (phase == 0)
+			node.move(lineShift, offsetShift);
+		if (phase < children.length)
+			traversal.descend((Command) children[phase]);
+	}
+
+	private void moveAll(Command node, Iterable<? extends Visitable> children)
+	{
+		if (traversal.phase() == 0)
+			node.move(lineShift, offsetShift);
+		traversal.descendNext(children);
+	}
+
+	@Override
+	public void visit(ExpressionList node) {
+		moveAll(node, node);
+	}
+
+	@Override
+	public void visit(DeclarationList node) {
+		moveAll(node, node);
+	}
+
+	@Override
+	public void visit(StatementList node) {
+		moveAll(node, node);
+	}
+
+	@Override
+	public void visit(AddressOf node) {
+		move(node);
+	}
+
+	@Override
+	public void visit(LiteralBool node) {
+		move(node);
+	}
+
+	@Override
+	public void visit(LiteralFloat node) {
+		move(node);
+	}
+
+	@Override
+	public void visit(LiteralInt node) {
+		move(node);
+	}
+
+	@Override
+	public void visit(VariableDeclaration node) {
+		move(node);
+	}
+
+	@Override
+	public void visit(ArrayDeclaration node) {
+		move(node);
+	}
+
+	@Override
+	public void visit(FunctionDefinition node) {
+		move(node, node.body());
+	}
+
+	@Override
+	public void visit(Addition node) {
+		move(node, node.leftSide(), node.rightSide());
+	}
+
+	@Override
+	public void visit(Subtraction node) {
+		move(node, node.leftSide(), node.rightSide());
+	}
+
+	@Override
+	public void visit(Multiplication node) {
+		move(node, node.leftSide(), node.rightSide());
+	}
+
+	@Override
+	public void visit(Division node) {
+		move(node, node.leftSide(), node.rightSide());
+	}
+
+	@Override
+	public void visit(LogicalAnd node) {
+		move(node, node.leftSide(), node.rightSide());
+	}
+
+	@Override
+	public void visit(LogicalOr node) {
+		move(node, node.leftSide(), node.rightSide());
+	}
+
+	@Override
+	public void visit(LogicalNot node) {
+		move(node, node.expression());
+	}
+
+	@Override
+	public void visit(Comparison node) {
+		move(node, node.leftSide(), node.rightSide());
+	}
+
+	@Override
+	public void visit(Dereference node) {
+		move(node, node.expression());
+	}
+
+	@Override
+	public void visit(Index node) {
+		move(node, node.base(), node.amount());
+	}
+
+	@Override
+	public void visit(Assignment node) {
+		move(node, node.destination(), node.source());
+	}
+
+	@Override
+	public void visit(Call node) {
+		move(node, node.arguments());
+	}
+
+	@Override
+	public void visit(IfElseBranch node) {
+		move(node, node.condition(), node.thenBlock(), node.elseBlock());
+	}
+
+	@Override
+	public void visit(WhileLoop node) {
+		move(node, node.condition(), node.body());
+	}
+
+	@Override
+	public void visit(Return node) {
+		move(node, node.argument());
+	}
+
+	@Override
+	public void visit(Error node) {
+		move(node);
+	}
+}
@@ -0,0 +1,112 @@
+package ast;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/* Visits a tree with an explicit stack of the nodes in progress instead of
+ * the Java call stack, so deeply nested code costs heap rather than thread
+ * stack.
+ *
+ * The visitor is called once per step of a node. A step either descends
+ * into one child, after which the node gets its next step, or finishes
+ * the node by not descending. Each node may keep one state object across
+ * its steps.
+ */
+public final class Traversal {
+
+	private static final int INITIAL_DEPTH = 64;
+
+	private Visitable[] nodes = new Visitable[INITIAL_DEPTH];
+	private int[] phases = new int[INITIAL_DEPTH];
+	private Object[] states = new Object[INITIAL_DEPTH];
+	private int count;
+
+	private int current;
+	private boolean descended;
+	private Visitable finished;
+
+	public void run(Visitable root, CommandVisitor visitor)
+	{
+		try {
+			push(root);
+			while (count > 0) {
+				current = count - 1;
+				descended = false;
+				nodes[current].accept(visitor);
+				phases[current]++;
+				if (!descended)
+					finished = pop();
+			}
+		} finally {
+			while (count > 0)
+				pop();
+			finished = null;
+		}
+	}
+
+	// how many steps of the current node came before this one
+	public int phase()
+	{
+		return phases[current];
+	}
+
+	public Object state()
+	{
+		return states[current];
+	}
+
+	public void setState(Object state)
+	{
+		states[current] = state;
+	}
+
+	// the child the previous step of the current node descended into
+	public Visitable finished()
+	{
+		return finished;
+	}
+
+	public void descend(Visitable child)
+	{
+		descended = true;
+		push(child);
+	}
+
+	// descends into the children one per step, returns false once all are done
+	public boolean descendNext(Iterable<? extends Visitable> children)
+	{
+		Iterator<?> iterator;
+		if (phase() == 0) {
+			iterator = children.iterator();
+			setState(iterator);
+		} else {
+			iterator = (Iterator<?>) state();
+		}
+		if (!iterator.hasNext())
+			return false;
+		descend((Visitable) iterator.next());
+		return true;
+	}
+
+	private void push(Visitable node)
+	{
+		if (count == nodes.length) {
+			nodes = Arrays.copyOf(nodes, count * 2);
+			phases = Arrays.copyOf(phases, count * 2);
+			states = Arrays.copyOf(states, count * 2);
+		}
+		nodes[count] = node;
+		phases[count] = 0;
+		states[count] = null;
+		count++;
+	}
+
+	private Visitable pop()
+	{
+		count--;
+		Visitable node = nodes[count];
+		nodes[count] = null;
+		states[count] = null;
+		return node;
+	}
+}
@@ -15,6 +15,11 @@ public class VariableDeclaration extends Command implements Declaration, Stateme
 	public Symbol symbol() {
 		return sym;
 	}
+
+	public void setSymbol(Symbol sym)
+	{
+		this.sym = sym;
+	}
 	
 	@Override
 	public String toString() {
@@ -0,0 +1,98 @@
+package crux;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import ast.FlatTree;
+
+/* A directory of parsed programs, each stored as the binary image of its
+ * FlatTree under the SHA-256 hash of its source.
+ *
+ * A file starts with a magic number, the version of the format and the
+ * hash again, so a file that is stale, truncated or from another version
+ * of the compiler is ignored like a missing one, and so is one FlatTree
+ * cannot read back, whatever its bytes are. Only programs that parsed
+ * without errors are stored; a program with type errors is, as those are
+ * found again when its tree is checked.
+ */
+public class AstCache {
+
+    private static final int MAGIC = 0x43525558; // "CRUX"
+    private static final int VERSION = 1;
+
+    private final Path directory;
+
+    public AstCache(Path directory)
+    {
+        this.directory = directory;
+    }
+
+    public static byte[] hash(byte[] source)
+    {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(source);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every Java platform has SHA-256.", e);
+        }
+    }
+
+    private Path path(byte[] hash)
+    {
+        StringBuilder name = new StringBuilder();
+        for (byte b : hash)
+            name.append(String.format("%02x", b));
+        return directory.resolve(name.append(".ast").toString());
+    }
+
+    // the tree stored under hash, or null if there is none that can be read
+    public FlatTree load(byte[] hash)
+    {
+        Path path = path(hash);
+        if (!Files.isRegularFile(path))
+            return null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != VERSION)
+                return null;
+            byte[] stored = new byte[hash.length];
+            in.get(stored);
+            if (!Arrays.equals(stored, hash))
+                return null;
+            return FlatTree.read(in);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // writes to a temporary file first, so no reader ever sees half a tree
+    public void store(byte[] hash, FlatTree tree) throws IOException
+    {
+        Files.createDirectories(directory);
+        Path path = path(hash);
+        Path temporary = Files.createTempFile(directory, "tree", ".tmp");
+        try {
+            try (OutputStream file = Files.newOutputStream(temporary);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.write(hash);
+                tree.write(out);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
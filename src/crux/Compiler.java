@@ -1,38 +1,82 @@
 package crux;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class Compiler {
     public static String studentName = "TODO: Your Name";
     public static String studentID = "TODO: Your 8-digit id";
     public static String uciNetID = "TODO: uci-net id";
     
+    // parsed programs are only cached with -Dcrux.cache=<directory>, which is never cleaned up
+    private static AstCache astCache()
+    {
+        String directory = System.getProperty("crux.cache");
+        if (directory == null || directory.isEmpty())
+            return null;
+        return new AstCache(Paths.get(directory));
+    }
+
     public static void main(String[] args)
     {
         String sourceFilename = args[0];
+        Path sourcePath = Paths.get(sourceFilename);
 
-        Scanner s = null;
+        // a program parsed before is loaded from the cache instead,
+        // the source is read once to be hashed and, if it is not there, scanned
+        byte[] source = null;
+        byte[] hash = null;
+        ast.FlatTree cachedTree = null;
+        AstCache cache = astCache();
         try {
-            s = new Scanner(new FileReader(sourceFilename));
+            if (cache != null) {
+                source = Files.readAllBytes(sourcePath);
+                hash = AstCache.hash(source);
+                cachedTree = cache.load(hash);
+            }
         } catch (IOException e) {
             e.printStackTrace();
             System.err.println("Error accessing the source file: \"" + sourceFilename + "\"");
             System.exit(-2);
         }
 
-        Parser p = new Parser(s);
-        ast.Command syntaxTree = p.parse();
-        if (p.hasError()) {
-            System.out.println("Error parsing file " + sourceFilename);
-            System.out.println(p.errorReport());
-            System.exit(-3);
+        ast.Command syntaxTree = null;
+        if (cachedTree == null) {
+            Scanner s = null;
+            try {
+                s = source != null ? new Scanner(source) : new Scanner(sourcePath);
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.err.println("Error accessing the source file: \"" + sourceFilename + "\"");
+                System.exit(-2);
+            }
+
+            Parser p = new Parser(s);
+            syntaxTree = p.parse();
+            if (p.hasError()) {
+                System.out.println("Error parsing file " + sourceFilename);
+                System.out.println(p.errorReport());
+                System.exit(-3);
+            }
+
+            if (cache != null) {
+                try {
+                    cache.store(hash, ast.FlatTree.of(syntaxTree));
+                } catch (IOException e) {
+                    System.err.println("Error caching the parsed file: " + e.getMessage());
+                }
+            }
         }
 
         types.TypeChecker tc = new types.TypeChecker();
-        tc.check(syntaxTree);
+        if (cachedTree != null)
+            tc.check(cachedTree);
+        else
+            tc.check(syntaxTree);
         if (tc.hasError()) {
             System.out.println("Error type-checking file " + sourceFilename);
             System.out.println(tc.errorReport());
@@ -40,7 +84,10 @@ public class Compiler {
         }
 
         mips.CodeGen cg = new mips.CodeGen(tc);
-        cg.generate(syntaxTree);
+        if (cachedTree != null)
+            cg.generate(cachedTree);
+        else
+            cg.generate(syntaxTree);
         if (cg.hasError()) {
             System.out.println("Error generating code for file " + sourceFilename);
             System.out.println(cg.errorReport());
@@ -0,0 +1,9 @@
+package crux;
+
+class ErrorSymbol extends Symbol
+{
+    public ErrorSymbol(String message)
+    {
+        super(message);
+    }
+}
@@ -0,0 +1,488 @@
+package crux;
+
+import static crux.Grammar.Action.*;
+import static crux.NonTerminal.*;
+import static crux.Token.Kind.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/* The syntactic grammar of Crux, with the FIRST and FOLLOW sets and the LL(1)
+ * parse table generated from it.
+ *
+ * A production is a sequence of symbols, encoded as ints: a terminal is the
+ * ordinal of its Token.Kind, a nonterminal is TERMINALS plus its index, and
+ * a semantic Action is a negative number. The first nonterminals are the
+ * NonTerminal constants in order; the repetitions and options of the EBNF
+ * grammar are rewritten into helper nonterminals that follow them. Actions
+ * do not match any input, they tell the PredictiveParser which ast node to
+ * build, in the same order as the recursive-descent Parser builds them.
+ *
+ * FIRST and FOLLOW sets are bitmasks over Token.Kind ordinals. The EOF
+ * follows the program.
+ */
+final class Grammar {
+
+    public static final int NONE = -1;
+
+    static final int TERMINALS = Token.Kind.values().length;
+
+    private static final Grammar CRUX = new Grammar();
+
+    public static Grammar crux()
+    {
+        return CRUX;
+    }
+
+    // what the PredictiveParser does when an action comes off its stack
+    enum Action {
+        MARK,                   // push the position of the current token
+        DROP_MARK,
+        DROP_VALUE,
+        PUSH_LITERAL,           // the current token, before it is matched
+        PUSH_TYPE,
+        PUSH_OPERATOR,
+        MAKE_BINARY,
+        MAKE_NOT,
+        RESOLVE,                // the current IDENTIFIER, before it is matched
+        RESOLVE_FUNCTION,
+        MAKE_ADDRESS,           // leaves the designator's mark for the caller
+        MAKE_INDEX,
+        MAKE_DEREFERENCE,
+        MAKE_CALL,
+        NEW_EXPRESSION_LIST,
+        ADD_EXPRESSION,
+        DECLARE,                // the current IDENTIFIER, before it is matched
+        SET_SYMBOL_TYPE,
+        MAKE_VARIABLE,
+        PUSH_EXTENT,
+        MAKE_ARRAY_TYPE,
+        MAKE_ARRAY,
+        MAKE_FUNCTION_TYPE,
+        MAKE_FUNCTION,
+        NEW_DECLARATION_LIST,
+        ADD_DECLARATION,
+        MAKE_ASSIGNMENT,
+        NEW_ELSE_BLOCK,
+        MAKE_IF,
+        MAKE_WHILE,
+        MAKE_RETURN,
+        NEW_STATEMENT_LIST,
+        ADD_STATEMENT,
+        ENTER_SCOPE,
+        EXIT_SCOPE;
+
+        private static final Action[] VALUES = values();
+
+        int symbol()
+        {
+            return -1 - ordinal();
+        }
+
+        static Action of(int symbol)
+        {
+            return VALUES[-1 - symbol];
+        }
+    }
+
+    private final List<String> names = new ArrayList<String>();
+    private final List<int[]> productions = new ArrayList<int[]>();
+    private final List<Integer> heads = new ArrayList<Integer>();
+    private boolean[] isTokenClass;
+
+    private long[] first;
+    private long[] follow;
+    private boolean[] nullable;
+    private int[] table;
+
+    private Grammar()
+    {
+        if (TERMINALS > Long.SIZE)
+            throw new IllegalStateException("Token kinds do not fit in a long bitmask.");
+        for (NonTerminal nt : NonTerminal.values())
+            names.add(nt.name());
+        isTokenClass = new boolean[NonTerminal.values().length];
+
+        int extents = helper("ARRAY_EXTENTS");
+        int parameters = helper("PARAMETERS");
+        int moreParameters = helper("MORE_PARAMETERS");
+        int declarations = helper("DECLARATIONS");
+        int indices = helper("DESIGNATOR_INDICES");
+        int expression0Tail = helper("EXPRESSION0_TAIL");
+        int expression1Tail = helper("EXPRESSION1_TAIL");
+        int expression2Tail = helper("EXPRESSION2_TAIL");
+        int expressions = helper("EXPRESSIONS");
+        int moreExpressions = helper("MORE_EXPRESSIONS");
+        int elseBlock = helper("ELSE_BLOCK");
+        int statements = helper("STATEMENTS");
+
+        // program := declaration-list EOF .
+        rule(PROGRAM, DECLARATION_LIST);
+
+        // declaration-list := { declaration } .
+        rule(DECLARATION_LIST, NEW_DECLARATION_LIST, declarations);
+        rule(declarations, DECLARATION, ADD_DECLARATION, declarations);
+        rule(declarations);
+
+        // declaration := variable-declaration | array-declaration | function-definition .
+        rule(DECLARATION, VARIABLE_DECLARATION);
+        rule(DECLARATION, ARRAY_DECLARATION);
+        rule(DECLARATION, FUNCTION_DEFINITION);
+
+        // variable-declaration := "var" IDENTIFIER ":" type ";" .
+        rule(VARIABLE_DECLARATION, MARK, VAR, DECLARE, IDENTIFIER, COLON, TYPE, SET_SYMBOL_TYPE, SEMICOLON, MAKE_VARIABLE);
+
+        // array-declaration := "array" IDENTIFIER ":" type "[" INTEGER "]" { "[" INTEGER "]" } ";" .
+        rule(ARRAY_DECLARATION, MARK, ARRAY, DECLARE, IDENTIFIER, COLON, TYPE,
+                OPEN_BRACKET, PUSH_EXTENT, INTEGER, CLOSE_BRACKET, extents, MAKE_ARRAY_TYPE, SEMICOLON, MAKE_ARRAY);
+        rule(extents, OPEN_BRACKET, PUSH_EXTENT, INTEGER, CLOSE_BRACKET, extents);
+        rule(extents);
+
+        // function-definition := "func" IDENTIFIER "(" parameter-list ")" ":" type statement-block .
+        rule(FUNCTION_DEFINITION, MARK, FUNC, DECLARE, IDENTIFIER, OPEN_PAREN, ENTER_SCOPE, PARAMETER_LIST,
+                CLOSE_PAREN, COLON, TYPE, MAKE_FUNCTION_TYPE, STATEMENT_BLOCK, MAKE_FUNCTION);
+
+        // parameter-list := [ parameter { "," parameter } ] .
+        rule(PARAMETER_LIST, NEW_DECLARATION_LIST, parameters);
+        rule(parameters, PARAMETER, ADD_DECLARATION, moreParameters);
+        rule(parameters);
+        rule(moreParameters, COMMA, PARAMETER, ADD_DECLARATION, moreParameters);
+        rule(moreParameters);
+
+        // parameter := IDENTIFIER ":" type .
+        // the Parser positions a parameter at the token after its name
+        rule(PARAMETER, DECLARE, IDENTIFIER, MARK, COLON, TYPE, SET_SYMBOL_TYPE, MAKE_VARIABLE);
+
+        // statement-block := "{" statement-list "}" .
+        rule(STATEMENT_BLOCK, OPEN_BRACE, STATEMENT_LIST, CLOSE_BRACE, EXIT_SCOPE);
+
+        // statement-list := { statement } .
+        rule(STATEMENT_LIST, NEW_STATEMENT_LIST, statements);
+        rule(statements, STATEMENT, ADD_STATEMENT, statements);
+        rule(statements);
+
+        /* statement := variable-declaration
+         * | call-statement
+         * | assignment-statement
+         * | if-statement
+         * | while-statement
+         * | return-statement .
+         */
+        rule(STATEMENT, VARIABLE_DECLARATION);
+        rule(STATEMENT, CALL_STATEMENT);
+        rule(STATEMENT, ASSIGNMENT_STATEMENT);
+        rule(STATEMENT, IF_STATEMENT);
+        rule(STATEMENT, WHILE_STATEMENT);
+        rule(STATEMENT, RETURN_STATEMENT);
+
+        // call-statement := call-expression ";" .
+        rule(CALL_STATEMENT, CALL_EXPRESSION, SEMICOLON);
+
+        // assignment-statement := "let" designator "=" expression0 ";" .
+        rule(ASSIGNMENT_STATEMENT, MARK, LET, DESIGNATOR, DROP_MARK, ASSIGN, EXPRESSION0, SEMICOLON, MAKE_ASSIGNMENT);
+
+        // if-statement := "if" expression0 statement-block [ "else" statement-block ] .
+        rule(IF_STATEMENT, MARK, IF, EXPRESSION0, ENTER_SCOPE, STATEMENT_BLOCK, NEW_ELSE_BLOCK, elseBlock, MAKE_IF);
+        rule(elseBlock, ELSE, DROP_VALUE, ENTER_SCOPE, STATEMENT_BLOCK);
+        rule(elseBlock);
+
+        // while-statement := "while" expression0 statement-block .
+        rule(WHILE_STATEMENT, MARK, WHILE, EXPRESSION0, ENTER_SCOPE, STATEMENT_BLOCK, MAKE_WHILE);
+
+        // return-statement := "return" expression0 ";" .
+        rule(RETURN_STATEMENT, MARK, RETURN, EXPRESSION0, SEMICOLON, MAKE_RETURN);
+
+        // expression0 := expression1 [ op0 expression1 ] .
+        rule(EXPRESSION0, EXPRESSION1, expression0Tail);
+        rule(expression0Tail, MARK, OP0, EXPRESSION1, MAKE_BINARY);
+        rule(expression0Tail);
+
+        // expression1 := expression2 { op1 expression2 } .
+        rule(EXPRESSION1, EXPRESSION2, expression1Tail);
+        rule(expression1Tail, MARK, OP1, EXPRESSION2, MAKE_BINARY, expression1Tail);
+        rule(expression1Tail);
+
+        // expression2 := expression3 { op2 expression3 } .
+        rule(EXPRESSION2, EXPRESSION3, expression2Tail);
+        rule(expression2Tail, MARK, OP2, EXPRESSION3, MAKE_BINARY, expression2Tail);
+        rule(expression2Tail);
+
+        /* expression3 := "not" expression3
+         * | "(" expression0 ")"
+         * | designator
+         * | call-expression
+         * | literal .
+         */
+        rule(EXPRESSION3, MARK, NOT, EXPRESSION3, MAKE_NOT);
+        rule(EXPRESSION3, OPEN_PAREN, EXPRESSION0, CLOSE_PAREN);
+        rule(EXPRESSION3, DESIGNATOR, MAKE_DEREFERENCE);
+        rule(EXPRESSION3, CALL_EXPRESSION);
+        rule(EXPRESSION3, LITERAL);
+
+        // designator := IDENTIFIER { "[" expression0 "]" } .
+        rule(DESIGNATOR, MARK, RESOLVE, IDENTIFIER, MAKE_ADDRESS, indices);
+        rule(indices, OPEN_BRACKET, MARK, EXPRESSION0, MAKE_INDEX, CLOSE_BRACKET, indices);
+        rule(indices);
+
+        // call-expression := "::" IDENTIFIER "(" expression-list ")" .
+        rule(CALL_EXPRESSION, MARK, CALL, RESOLVE_FUNCTION, IDENTIFIER, OPEN_PAREN, EXPRESSION_LIST, CLOSE_PAREN, MAKE_CALL);
+
+        // expression-list := [ expression0 { "," expression0 } ] .
+        rule(EXPRESSION_LIST, NEW_EXPRESSION_LIST, expressions);
+        rule(expressions, EXPRESSION0, ADD_EXPRESSION, moreExpressions);
+        rule(expressions);
+        rule(moreExpressions, COMMA, EXPRESSION0, ADD_EXPRESSION, moreExpressions);
+        rule(moreExpressions);
+
+        // type := IDENTIFIER .
+        tokens(TYPE, PUSH_TYPE, IDENTIFIER);
+        // literal := INTEGER | FLOAT | TRUE | FALSE .
+        tokens(LITERAL, PUSH_LITERAL, INTEGER, FLOAT, TRUE, FALSE);
+        // op0 := ">=" | "<=" | "!=" | "==" | ">" | "<" .
+        tokens(OP0, PUSH_OPERATOR, GREATER_EQUAL, LESSER_EQUAL, NOT_EQUAL, EQUAL, GREATER_THAN, LESS_THAN);
+        // op1 := "+" | "-" | "or" .
+        tokens(OP1, PUSH_OPERATOR, ADD, SUB, OR);
+        // op2 := "*" | "/" | "and" .
+        tokens(OP2, PUSH_OPERATOR, MUL, DIV, AND);
+
+        computeFirstSets();
+        computeFollowSets();
+        buildTable();
+    }
+
+// Grammar Description ==========================================
+    private int helper(String name)
+    {
+        names.add(name);
+        return TERMINALS + names.size() - 1;
+    }
+
+    // symbols are Token.Kinds, NonTerminals, Actions or helper nonterminals
+    private void rule(Object head, Object... body)
+    {
+        int[] production = new int[body.length];
+        for (int i = 0; i < body.length; i++)
+            production[i] = encode(body[i]);
+        heads.add(encode(head) - TERMINALS);
+        productions.add(production);
+    }
+
+    // a nonterminal that stands for a single token of a class, each with the same action
+    private void tokens(NonTerminal head, Action action, Token.Kind... kinds)
+    {
+        isTokenClass[head.ordinal()] = true;
+        for (Token.Kind kind : kinds)
+            rule(head, action, kind);
+    }
+
+    private static int encode(Object symbol)
+    {
+        if (symbol instanceof Token.Kind)
+            return ((Token.Kind) symbol).ordinal();
+        if (symbol instanceof NonTerminal)
+            return TERMINALS + ((NonTerminal) symbol).ordinal();
+        if (symbol instanceof Action)
+            return ((Action) symbol).symbol();
+        return (Integer) symbol;
+    }
+
+// FIRST and FOLLOW ==========================================
+    private void computeFirstSets()
+    {
+        first = new long[names.size()];
+        nullable = new boolean[names.size()];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int p = 0; p < productions.size(); p++) {
+                int head = heads.get(p);
+                long set = first[head] | firstOf(productions.get(p), 0);
+                boolean isNullable = nullable[head] || isNullable(productions.get(p), 0);
+                if (set != first[head] || isNullable != nullable[head]) {
+                    first[head] = set;
+                    nullable[head] = isNullable;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private void computeFollowSets()
+    {
+        follow = new long[names.size()];
+        follow[PROGRAM.ordinal()] = bit(EOF.ordinal());
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int p = 0; p < productions.size(); p++) {
+                int[] production = productions.get(p);
+                for (int i = 0; i < production.length; i++) {
+                    if (!isNonTerminal(production[i]))
+                        continue;
+                    int nt = production[i] - TERMINALS;
+                    long set = follow[nt] | firstOf(production, i + 1);
+                    if (isNullable(production, i + 1))
+                        set |= follow[heads.get(p)];
+                    if (set != follow[nt]) {
+                        follow[nt] = set;
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    // FIRST of the symbols of production from index start on
+    private long firstOf(int[] production, int start)
+    {
+        long set = 0;
+        for (int i = start; i < production.length; i++) {
+            int symbol = production[i];
+            if (symbol < 0)
+                continue;
+            if (symbol < TERMINALS)
+                return set | bit(symbol);
+            set |= first[symbol - TERMINALS];
+            if (!nullable[symbol - TERMINALS])
+                return set;
+        }
+        return set;
+    }
+
+    private boolean isNullable(int[] production, int start)
+    {
+        for (int i = start; i < production.length; i++) {
+            int symbol = production[i];
+            if (symbol < 0)
+                continue;
+            if (symbol < TERMINALS || !nullable[symbol - TERMINALS])
+                return false;
+        }
+        return true;
+    }
+
+// Parse Table ==========================================
+    /* Every (nonterminal, terminal) entry names the production to expand.
+     * Where no production starts with the terminal, a nonterminal with an
+     * empty alternative takes it and one with a single production expands
+     * it anyway, leaving the error to the first symbol that does not match,
+     * as the recursive-descent Parser does. The other entries are NONE, a
+     * syntax error "from" the nonterminal.
+     */
+    private void buildTable()
+    {
+        int count = names.size();
+        table = new int[count * TERMINALS];
+        Arrays.fill(table, NONE);
+        int[] fallback = new int[count];
+        int[] size = new int[count];
+        Arrays.fill(fallback, NONE);
+
+        for (int p = 0; p < productions.size(); p++) {
+            int head = heads.get(p);
+            int[] production = productions.get(p);
+            long set = firstOf(production, 0);
+            if (isNullable(production, 0)) {
+                set |= follow[head];
+                fallback[head] = p;
+            } else if (size[head] == 0) {
+                fallback[head] = p;
+            }
+            size[head]++;
+            for (int t = 0; t < TERMINALS; t++) {
+                if ((set & bit(t)) == 0)
+                    continue;
+                if (table[head * TERMINALS + t] != NONE)
+                    throw new IllegalStateException("The grammar is not LL(1), " + names.get(head) + " has two productions for " + Token.Kind.values()[t] + ".");
+                table[head * TERMINALS + t] = p;
+            }
+        }
+
+        for (int nt = 0; nt < count; nt++) {
+            boolean hasEmpty = fallback[nt] != NONE && isNullable(productions.get(fallback[nt]), 0);
+            if (isTokenClass(nt) || (size[nt] > 1 && !hasEmpty))
+                continue;
+            for (int t = 0; t < TERMINALS; t++) {
+                if (table[nt * TERMINALS + t] == NONE)
+                    table[nt * TERMINALS + t] = fallback[nt];
+            }
+        }
+    }
+
+    private boolean isTokenClass(int nt)
+    {
+        return nt < isTokenClass.length && isTokenClass[nt];
+    }
+
+// Queries ==========================================
+    public static boolean isNonTerminal(int symbol)
+    {
+        return symbol >= TERMINALS;
+    }
+
+    public static boolean isTerminal(int symbol)
+    {
+        return symbol >= 0 && symbol < TERMINALS;
+    }
+
+    public static long bit(int kindOrdinal)
+    {
+        return 1L << kindOrdinal;
+    }
+
+    public static Set<Token.Kind> kinds(long set)
+    {
+        EnumSet<Token.Kind> kinds = EnumSet.noneOf(Token.Kind.class);
+        for (Token.Kind kind : Token.Kind.values()) {
+            if ((set & bit(kind.ordinal())) != 0)
+                kinds.add(kind);
+        }
+        return kinds;
+    }
+
+    public int start()
+    {
+        return symbol(PROGRAM);
+    }
+
+    static int symbol(NonTerminal nonTerminal)
+    {
+        return TERMINALS + nonTerminal.ordinal();
+    }
+
+    public long first(NonTerminal nt)
+    {
+        return first[nt.ordinal()];
+    }
+
+    public long follow(NonTerminal nt)
+    {
+        return follow[nt.ordinal()];
+    }
+
+    public boolean isNullable(NonTerminal nt)
+    {
+        return nullable[nt.ordinal()];
+    }
+
+    // Returns the production to expand for the nonterminal symbol on the kind, or NONE
+    public int predict(int symbol, Token.Kind kind)
+    {
+        return table[(symbol - TERMINALS) * TERMINALS + kind.ordinal()];
+    }
+
+    public int[] production(int index)
+    {
+        return productions.get(index);
+    }
+
+    // Returns the NonTerminal the symbol stands for, or null for a helper
+    public NonTerminal nonTerminal(int symbol)
+    {
+        int nt = symbol - TERMINALS;
+        return nt < NonTerminal.values().length ? NonTerminal.values()[nt] : null;
+    }
+}
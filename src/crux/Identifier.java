@@ -0,0 +1,31 @@
+package crux;
+
+/* A name as the Parser read it, with the position where it was read.
+ *
+ * A Parser that does not resolve names puts one in every node that names a
+ * symbol. A Resolver then declares those of the declarations in their scope,
+ * where they stay as the declared Symbol, and replaces those of the
+ * references by the Symbol they refer to.
+ */
+public class Identifier extends Symbol {
+
+    private int lineNum;
+    private int charPos;
+
+    public Identifier(String name, int lineNum, int charPos)
+    {
+        super(name);
+        this.lineNum = lineNum;
+        this.charPos = charPos;
+    }
+
+    public int lineNumber()
+    {
+        return lineNum;
+    }
+
+    public int charPosition()
+    {
+        return charPos;
+    }
+}
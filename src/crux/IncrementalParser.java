@@ -0,0 +1,212 @@
+package crux;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ast.Command;
+import ast.Declaration;
+import ast.DeclarationList;
+import ast.PositionShifter;
+
+/* Keeps a parsed program up to date with edits of its source.
+ *
+ * After an edit the tokens are relexed, and only the top-level declarations
+ * the edit overlaps are parsed again, from the token the first of them
+ * starts at up to the token the next unchanged one starts at. The new
+ * declarations replace the old ones in the same DeclarationList; every
+ * other declaration keeps its nodes and its Symbol, and only has its
+ * positions moved if the edit added or removed lines before it.
+ *
+ * A global declared again keeps its Symbol too, so the declarations after
+ * it still refer to the right one. Where that cannot hold, because a global
+ * disappeared or took a name declared further on, and whenever the program
+ * has errors before or after the edit, the whole program is parsed again,
+ * so that tree() and errorReport() are always those of Parser.parse().
+ */
+public class IncrementalParser {
+
+    private TokenBuffer tokens;
+    private Command tree;
+    private String errorReport;
+    // the global scope of the program, the predefined functions first
+    private SymbolTable globals;
+    private int predefinedCount;
+    // the token index each top-level declaration starts at, then the one the program ends at
+    private int[] starts;
+    private int declarationCount;
+    private int reparsedCount;
+
+    public IncrementalParser(TokenBuffer tokens)
+    {
+        this.tokens = tokens;
+        parseAll();
+    }
+
+    public Command tree()
+    {
+        return tree;
+    }
+
+    public TokenBuffer tokens()
+    {
+        return tokens;
+    }
+
+    public boolean hasError()
+    {
+        return errorReport.length() != 0;
+    }
+
+    public String errorReport()
+    {
+        return errorReport;
+    }
+
+    // how many declarations the last edit parsed, all of them if it parsed the whole program
+    public int reparsedDeclarations()
+    {
+        return reparsedCount;
+    }
+
+    // the characters [offset, offset + removedLength) of the source replaced by insertedText
+    public void edit(int offset, int removedLength, String insertedText)
+    {
+        TokenBuffer previous = tokens;
+        tokens = Scanner.relex(previous, offset, removedLength, insertedText);
+        if (!reparse(previous, offset, offset + removedLength, insertedText.length() - removedLength))
+            parseAll();
+    }
+
+    private void parseAll()
+    {
+        Parser parser = new Parser(tokens);
+        globals = new SymbolTable(null);
+        predefinedCount = globals.size();
+        parser.startAt(0, globals, null);
+        starts = new int[16];
+        declarationCount = 0;
+        try {
+            DeclarationList list = new DeclarationList(parser.lineNumber(), parser.charPosition());
+            while (parser.have(NonTerminal.DECLARATION)) {
+                setStart(declarationCount++, parser.tokenIndex());
+                list.add(parser.declaration());
+            }
+            setStart(declarationCount, parser.tokenIndex());
+            tree = list;
+        } catch (Parser.QuitParseException q) {
+            tree = new ast.Error(parser.reportedLineNumber(), parser.reportedCharPosition(), "Could not complete parsing.");
+        }
+        errorReport = parser.errorReport();
+        reparsedCount = declarationCount;
+    }
+
+    private void setStart(int declaration, int index)
+    {
+        if (declaration >= starts.length)
+            starts = Arrays.copyOf(starts, starts.length * 2);
+        starts[declaration] = index;
+    }
+
+    // returns false where the whole program has to be parsed again
+    private boolean reparse(TokenBuffer previous, int editStart, int editEnd, int shift)
+    {
+        int count = declarationCount;
+        if (hasError() || count == 0 || !previous.is(starts[count], Token.Kind.EOF))
+            return false;
+        DeclarationList list = (DeclarationList) tree;
+
+        // declaration i spans from where it starts to where the next one
+        // does, ends included: an edit between two declarations overlaps both
+        int first = 0;
+        while (first < count - 1 && previous.offset(starts[first + 1]) < editStart)
+            first++;
+        int last = first;
+        while (last < count - 1 && previous.offset(starts[last + 1]) <= editEnd)
+            last++;
+
+        // the next declaration is kept if its first token did not change,
+        // apart from moving by the edit, otherwise it is parsed again too
+        int from = first == 0 ? 0 : starts[first];
+        int end = from;
+        for (;;) {
+            int next = starts[last + 1];
+            int target = previous.offset(next) + shift;
+            while (end < tokens.size() - 1 && tokens.offset(end) < target)
+                end++;
+            boolean atEnd = last == count - 1;
+            if (tokens.offset(end) == target && tokens.kind(end) == previous.kind(next)
+                    && (atEnd || !tokens.hasPositions() || tokens.charPosition(end) == previous.charPosition(next)))
+                break;
+            if (atEnd)
+                return false;
+            last++;
+        }
+
+        Map<String, Symbol> reusable = new HashMap<String, Symbol>();
+        for (int i = first; i <= last; i++) {
+            Symbol symbol = list.get(i).symbol();
+            reusable.put(symbol.name(), symbol);
+        }
+        SymbolTable scope = globals.prefix(predefinedCount + first);
+        Parser parser = new Parser(tokens);
+        parser.startAt(from, scope, reusable);
+        List<Declaration> declarations = new ArrayList<Declaration>();
+        List<Integer> declarationStarts = new ArrayList<Integer>();
+        try {
+            while (parser.tokenIndex() < end) {
+                declarationStarts.add(parser.tokenIndex());
+                declarations.add(parser.declaration());
+            }
+        } catch (Parser.QuitParseException q) {
+            return false;
+        }
+        if (parser.hasError() || parser.tokenIndex() != end || !reusable.isEmpty())
+            return false;
+        for (int i = last + 1; i < count; i++) {
+            if (isDeclared(scope, list.get(i).symbol().name()))
+                return false;
+        }
+
+        // splice, the declarations after the edit move with their tokens
+        int lineShift = tokens.hasPositions() ? tokens.lineNumber(end) - previous.lineNumber(starts[last + 1]) : 0;
+        for (int i = last + 1; i < count; i++) {
+            PositionShifter.shift((Command) list.get(i), lineShift, shift);
+            scope.insert(list.get(i).symbol());
+        }
+        list.replace(first, last + 1, declarations);
+        int lineNum = tokens.hasPositions() ? tokens.lineNumber(0) : Command.OFFSET_ONLY;
+        int charPos = tokens.hasPositions() ? tokens.charPosition(0) : tokens.offset(0);
+        if (list.lineNumber() != lineNum || list.charPosition() != charPos) {
+            DeclarationList moved = new DeclarationList(lineNum, charPos);
+            for (Declaration declaration : list)
+                moved.add(declaration);
+            tree = moved;
+        }
+        globals = scope;
+
+        int indexShift = end - starts[last + 1];
+        int[] updated = new int[first + declarations.size() + count - last];
+        System.arraycopy(starts, 0, updated, 0, first);
+        for (int i = 0; i < declarations.size(); i++)
+            updated[first + i] = declarationStarts.get(i);
+        for (int i = last + 1; i <= count; i++)
+            updated[i - last - 1 + first + declarations.size()] = starts[i] + indexShift;
+        starts = updated;
+        declarationCount = updated.length - 1;
+        reparsedCount = declarations.size();
+        return true;
+    }
+
+    private static boolean isDeclared(SymbolTable scope, String name)
+    {
+        try {
+            scope.lookup(name);
+            return true;
+        } catch (SymbolNotFoundError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package crux;
+
+import java.util.Arrays;
+
+/* Turns source offsets into line numbers and character positions.
+ *
+ * The table of line start offsets is built on the first query, so a
+ * compilation that reports nothing never pays for it. Positions follow the
+ * Scanner: lines and characters count from 1 and every character, tabs
+ * included, advances the character position by one.
+ */
+public class LineMap {
+
+    private final char[] source;
+    private final int length;
+    private volatile int[] lineStarts;
+
+    public LineMap(char[] source, int length)
+    {
+        this.source = source;
+        this.length = length;
+    }
+
+    private int[] buildLineStarts()
+    {
+        int[] starts = new int[64];
+        int count = 0;
+        starts[count++] = 0;
+        for (int i = 0; i < length; i++) {
+            if (source[i] == '\n') {
+                if (count == starts.length)
+                    starts = Arrays.copyOf(starts, count * 2);
+                starts[count++] = i + 1;
+            }
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    // index of the line holding offset, counted from 0
+    private int lineIndex(int[] starts, int offset)
+    {
+        int low = 0;
+        int high = starts.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (starts[mid] <= offset)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    // the table may be built by more than one thread at once, they all agree on it
+    private int[] lineStarts()
+    {
+        int[] starts = lineStarts;
+        if (starts == null) {
+            starts = buildLineStarts();
+            lineStarts = starts;
+        }
+        return starts;
+    }
+
+    public int lineNumber(int offset)
+    {
+        return lineIndex(lineStarts(), offset) + 1;
+    }
+
+    public int charPosition(int offset)
+    {
+        int[] starts = lineStarts();
+        return offset - starts[lineIndex(starts, offset)] + 1;
+    }
+}
@@ -1,186 +1,66 @@
 package crux;
-import java.util.HashSet;
 import java.util.Set;
 
+/* The nonterminals of the Crux grammar.
+ *
+ * Their FIRST and FOLLOW sets are generated from the productions in Grammar.
+ * Where the grammar allows an empty string it is not part of the FIRST set,
+ * ask isNullable() for it.
+ */
 public enum NonTerminal {
-    
-    // TODO: mention that we are not modeling the empty string
-    // TODO: mention that we are not doing a first set for every line in the grammar
-    //       some lines have already been handled by the CruxScanner
-    
-    DESIGNATOR(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            add(Token.Kind.IDENTIFIER);
-        }}),
-    TYPE(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            add(Token.Kind.IDENTIFIER);
-        }}),
-    LITERAL(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            add(Token.Kind.INTEGER);
-            add(Token.Kind.FLOAT);
-            add(Token.Kind.TRUE);
-            add(Token.Kind.FALSE);
-        }}),
-    CALL_EXPRESSION(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            add(Token.Kind.CALL);
-        }}),
-    OP0(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            add(Token.Kind.GREATER_EQUAL);
-            add(Token.Kind.GREATER_THAN);
-            add(Token.Kind.LESS_THAN);
-            add(Token.Kind.LESSER_EQUAL);
-            add(Token.Kind.NOT_EQUAL);
-            add(Token.Kind.EQUAL);
-       }}),
-    OP1(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            add(Token.Kind.ADD);
-            add(Token.Kind.SUB);
-            add(Token.Kind.OR);
-       }}),
-    OP2(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            add(Token.Kind.MUL);
-            add(Token.Kind.DIV);
-            add(Token.Kind.AND);
-       }}),
-    EXPRESSION3(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            add(Token.Kind.NOT);
-            add(Token.Kind.OPEN_PAREN);
-            addAll(DESIGNATOR.firstSet());
-            addAll(CALL_EXPRESSION.firstSet());
-            addAll(LITERAL.firstSet());
-       }}),
-    EXPRESSION2(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            addAll(EXPRESSION3.firstSet());
-        }}),
-    EXPRESSION1(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            addAll(EXPRESSION2.firstSet());
-        }}),
-    EXPRESSION0(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            addAll(EXPRESSION1.firstSet());
-        }}),
-    EXPRESSION_LIST(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            // Empty
-        }}),
-    PARAMETER(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            add(Token.Kind.IDENTIFIER);
-        }}),
-    PARAMETER_LIST(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            // Empty
-        }}),
-    VARIABLE_DECLARATION(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            add(Token.Kind.VAR);
-        }}),
-    ARRAY_DECLARATION(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            add(Token.Kind.ARRAY);
-        }}),
-    FUNCTION_DEFINITION(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            add(Token.Kind.FUNC);
-        }}),
-    DECLARATION(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            addAll(VARIABLE_DECLARATION.firstSet());
-            addAll(ARRAY_DECLARATION.firstSet());
-            addAll(FUNCTION_DEFINITION.firstSet());
-        }}),
-    DECLARATION_LIST(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            // Empty
-        }}),    
-    ASSIGNMENT_STATEMENT(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            add(Token.Kind.LET);
-        }}),
-    CALL_STATEMENT(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            addAll(CALL_EXPRESSION.firstSet());
-        }}),
-    IF_STATEMENT(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            add(Token.Kind.IF);
-        }}),
-    WHILE_STATEMENT(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            add(Token.Kind.WHILE);
-        }}),
-    RETURN_STATEMENT(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            add(Token.Kind.RETURN);
-        }}),
-    STATEMENT_BLOCK(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            add(Token.Kind.OPEN_BRACE);
-        }}),
-    STATEMENT(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            addAll(VARIABLE_DECLARATION.firstSet());
-            addAll(CALL_STATEMENT.firstSet());
-            addAll(ASSIGNMENT_STATEMENT.firstSet());
-            addAll(IF_STATEMENT.firstSet());
-            addAll(WHILE_STATEMENT.firstSet());
-            addAll(RETURN_STATEMENT.firstSet());
-        }}),
-    STATEMENT_LIST(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            // Empty
-        }}),
-    PROGRAM(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-            addAll(DECLARATION_LIST.firstSet());
-        }});
-           
-    public final HashSet<Token.Kind> firstSet = new HashSet<Token.Kind>();
 
-    NonTerminal(HashSet<Token.Kind> t)
+    DESIGNATOR,
+    TYPE,
+    LITERAL,
+    CALL_EXPRESSION,
+    OP0,
+    OP1,
+    OP2,
+    EXPRESSION3,
+    EXPRESSION2,
+    EXPRESSION1,
+    EXPRESSION0,
+    EXPRESSION_LIST,
+    PARAMETER,
+    PARAMETER_LIST,
+    VARIABLE_DECLARATION,
+    ARRAY_DECLARATION,
+    FUNCTION_DEFINITION,
+    DECLARATION,
+    DECLARATION_LIST,
+    ASSIGNMENT_STATEMENT,
+    CALL_STATEMENT,
+    IF_STATEMENT,
+    WHILE_STATEMENT,
+    RETURN_STATEMENT,
+    STATEMENT_BLOCK,
+    STATEMENT,
+    STATEMENT_LIST,
+    PROGRAM;
+
+    // bitmask over Token.Kind ordinals
+    public final long firstMask()
+    {
+        return Grammar.crux().first(this);
+    }
+
+    public final long followMask()
     {
-        firstSet.addAll(t);
+        return Grammar.crux().follow(this);
     }
-    
+
     public final Set<Token.Kind> firstSet()
     {
-        return firstSet;
+        return Grammar.kinds(firstMask());
+    }
+
+    public final Set<Token.Kind> followSet()
+    {
+        return Grammar.kinds(followMask());
+    }
+
+    public final boolean isNullable()
+    {
+        return Grammar.crux().isNullable(this);
     }
 }
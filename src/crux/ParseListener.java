@@ -0,0 +1,9 @@
+package crux;
+
+// Told about every grammar rule the Parser enters and leaves, see Parser.setParseListener()
+public interface ParseListener {
+
+    void enterRule(NonTerminal nonTerminal);
+
+    void exitRule(NonTerminal nonTerminal);
+}
@@ -0,0 +1,51 @@
+package crux;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/* Writes the parse tree as the Parser walks it, one rule per line and
+ * indented two spaces per level, straight to an Appendable.
+ * The indentation is a slice of one shared run of spaces, nothing is
+ * built per line.
+ */
+public class ParseTracer implements ParseListener {
+
+    private static final String INDENT_UNIT = "  ";
+    private static final String INDENTS;
+    static {
+        StringBuilder spaces = new StringBuilder();
+        for (int i = 0; i < 64; i++)
+            spaces.append(INDENT_UNIT);
+        INDENTS = spaces.toString();
+    }
+
+    private final Appendable out;
+    private int depth = 0;
+
+    public ParseTracer(Appendable out)
+    {
+        this.out = out;
+    }
+
+    @Override
+    public void enterRule(NonTerminal nonTerminal)
+    {
+        try {
+            int indent = depth * INDENT_UNIT.length();
+            for (; indent > INDENTS.length(); indent -= INDENTS.length())
+                out.append(INDENTS);
+            out.append(INDENTS, 0, indent);
+            out.append(nonTerminal.name());
+            out.append('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        depth++;
+    }
+
+    @Override
+    public void exitRule(NonTerminal nonTerminal)
+    {
+        depth--;
+    }
+}
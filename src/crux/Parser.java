@@ -3,7 +3,14 @@ package crux;
 import ast.*;
 import types.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class Parser {
     public static String studentName = "TODO: Your Name";
@@ -11,38 +18,46 @@ public class Parser {
     public static String uciNetID = "TODO: uci-net id";
 
 // Grammar Rule Reporting ==========================================
-    private int parseTreeRecursionDepth = 0;
-    private StringBuffer parseTreeBuffer = new StringBuffer();
+    // no listener by default, tracing then costs one null check per rule
+    private ParseListener listener = null;
+
+    // e.g. a ParseTracer, to print the parse tree
+    public void setParseListener(ParseListener listener)
+    {
+        this.listener = listener;
+    }
 
     public void enterRule(NonTerminal nonTerminal) {
-        String lineData = new String();
-        for(int i = 0; i < parseTreeRecursionDepth; i++)
-        {
-            lineData += "  ";
-        }
-        lineData += nonTerminal.name();
-        parseTreeBuffer.append(lineData + "\n");
-        parseTreeRecursionDepth++;
+        if (listener != null)
+            listener.enterRule(nonTerminal);
     }
 
     private void exitRule(NonTerminal nonTerminal)
     {
-        parseTreeRecursionDepth--;
+        if (listener != null)
+            listener.exitRule(nonTerminal);
     }
 
 // Error Reporting ==========================================
     private StringBuffer errorBuffer = new StringBuffer();
     
-    private String reportSyntaxError(NonTerminal nt)
+    String reportSyntaxError(NonTerminal nt)
     {
-        String message = "SyntaxError(" + lineNumber() + "," + charPosition() + ")[Expected a token from " + nt.name() + " but got " + currentToken.kind() + ".]";
+        String message = "SyntaxError(" + reportedLineNumber() + "," + reportedCharPosition() + ")[Expected a token from " + nt.name() + " but got " + kind() + ".]";
         errorBuffer.append(message + "\n");
         return message;
     }
      
-    private String reportSyntaxError(Token.Kind kind)
+    String reportSyntaxError(Token.Kind kind)
     {
-        String message = "SyntaxError(" + lineNumber() + "," + charPosition() + ")[Expected " + kind + " but got " + currentToken.kind() + ".]";
+        String message = "SyntaxError(" + reportedLineNumber() + "," + reportedCharPosition() + ")[Expected " + kind + " but got " + kind() + ".]";
+        errorBuffer.append(message + "\n");
+        return message;
+    }
+    
+    String reportRangeError()
+    {
+        String message = "SyntaxError(" + reportedLineNumber() + "," + reportedCharPosition() + ")[Literal " + lexeme() + " is out of range for " + kind() + ".]";
         errorBuffer.append(message + "\n");
         return message;
     }
@@ -57,7 +72,7 @@ public class Parser {
         return errorBuffer.length() != 0;
     }
     
-    private class QuitParseException extends RuntimeException
+    static class QuitParseException extends RuntimeException
     {
         private static final long serialVersionUID = 1L;
         public QuitParseException(String errorMessage) {
@@ -65,52 +80,227 @@ public class Parser {
         }
     }
     
-    private int lineNumber()
+// Token Access ==========================================
+    // the parser either pulls Token objects one at a time, from a Scanner or
+    // a TokenPipeline, or walks the indices of a TokenBuffer scanned in advance.
+    // Over a TokenBuffer without positions, nodes get the source offset of
+    // their token, and only diagnostics look up the line and character.
+    // The PredictiveParser reads tokens through the same methods.
+    private Iterator<Token> scanner;
+    private TokenPipeline pipeline;
+    private Token currentToken;
+    private TokenBuffer tokens;
+    private int current;
+
+    Token.Kind kind()
     {
+        if (tokens != null)
+            return tokens.kind(current);
+        return currentToken.kind();
+    }
+
+    int lineNumber()
+    {
+        if (tokens != null)
+            return tokens.hasPositions() ? tokens.lineNumber(current) : Command.OFFSET_ONLY;
         return currentToken.lineNumber();
     }
     
-    private int charPosition()
+    int charPosition()
     {
+        if (tokens != null)
+            return tokens.hasPositions() ? tokens.charPosition(current) : tokens.offset(current);
         return currentToken.charPosition();
     }
+
+    int reportedLineNumber()
+    {
+        if (tokens != null)
+            return tokens.lineNumber(current);
+        return currentToken.lineNumber();
+    }
+
+    int reportedCharPosition()
+    {
+        if (tokens != null)
+            return tokens.charPosition(current);
+        return currentToken.charPosition();
+    }
+
+    // the current token as an object, made anew over a TokenBuffer
+    Token token()
+    {
+        if (tokens != null)
+            return tokens.token(current);
+        return currentToken;
+    }
+
+    String lexeme()
+    {
+        if (tokens != null)
+            return tokens.lexeme(current);
+        return currentToken.lexeme();
+    }
+
+    int value()
+    {
+        if (tokens != null)
+            return tokens.value(current);
+        return currentToken.value();
+    }
+
+    boolean isOutOfRange()
+    {
+        if (tokens != null)
+            return tokens.isOutOfRange(current);
+        return currentToken.isOutOfRange();
+    }
+
+    void advance()
+    {
+        if (tokens != null) {
+            // stay on the trailing EOF
+            if (current < tokens.size() - 1)
+                current++;
+        } else {
+            currentToken = scanner.next();
+        }
+    }
           
 // Parser ==========================================
-    private Scanner scanner;
-    private Token currentToken;
-    
+    // binding power of each binary operator, by Token.Kind ordinal, and 0 for any other kind
+    private static final int COMPARISON = 1;
+    private static final int ADDITION = 2;
+    private static final int MULTIPLICATION = 3;
+    private static final int[] BINDING_POWER = new int[Token.Kind.values().length];
+
+    static {
+        for (Token.Kind kind : NonTerminal.OP0.firstSet())
+            BINDING_POWER[kind.ordinal()] = COMPARISON;
+        for (Token.Kind kind : NonTerminal.OP1.firstSet())
+            BINDING_POWER[kind.ordinal()] = ADDITION;
+        for (Token.Kind kind : NonTerminal.OP2.firstSet())
+            BINDING_POWER[kind.ordinal()] = MULTIPLICATION;
+    }
+
     public Parser(Scanner scanner)
     {
         this.scanner = scanner;
         currentToken = scanner.next();
     }
 
+    // parses while the pipeline's own thread is still scanning,
+    // the pipeline is closed once a parse is done, at EOF or not
+    public Parser(TokenPipeline pipeline)
+    {
+        this.scanner = pipeline;
+        this.pipeline = pipeline;
+        currentToken = pipeline.next();
+    }
+
+    public Parser(TokenBuffer tokens)
+    {
+        this.tokens = tokens;
+        current = 0;
+    }
+
     public ast.Command parse()
     {
         initSymbolTable();
         try {
             return program();
         } catch (QuitParseException q) {
-            return new ast.Error(lineNumber(), charPosition(), "Could not complete parsing.");
+            return new ast.Error(reportedLineNumber(), reportedCharPosition(), "Could not complete parsing.");
+        } finally {
+            closePipeline();
+        }
+    }
+
+    // Parses like parse(), with the table-driven PredictiveParser instead of
+    // the methods below. The ParseListener is not told about rules.
+    public ast.Command parsePredictive()
+    {
+        initSymbolTable();
+        try {
+            return new PredictiveParser(this, Grammar.crux()).parse();
+        } catch (QuitParseException q) {
+            return new ast.Error(reportedLineNumber(), reportedCharPosition(), "Could not complete parsing.");
+        } finally {
+            closePipeline();
+        }
+    }
+
+    // Parses like parse(), into a FlatTree. Each top-level declaration is
+    // flattened as soon as it is parsed, so only one is ever held as nodes.
+    public FlatTree parseFlat()
+    {
+        initSymbolTable();
+        FlatTree tree = new FlatTree();
+        try {
+            enterRule(NonTerminal.PROGRAM);
+            enterRule(NonTerminal.DECLARATION_LIST);
+
+            int list = tree.add(new DeclarationList(lineNumber(), charPosition()));
+            int previous = FlatTree.NONE;
+            while (have(NonTerminal.DECLARATION)) {
+                int declaration = tree.add((Command) declaration());
+                tree.link(list, previous, declaration);
+                previous = declaration;
+            }
+            tree.setRoot(list);
+
+            exitRule(NonTerminal.DECLARATION_LIST);
+            exitRule(NonTerminal.PROGRAM);
+        } catch (QuitParseException q) {
+            tree.setRoot(tree.add(new ast.Error(reportedLineNumber(), reportedCharPosition(), "Could not complete parsing.")));
+        } finally {
+            closePipeline();
         }
+        tree.trimToSize();
+        return tree;
+    }
+
+    private void closePipeline()
+    {
+        if (pipeline != null)
+            pipeline.close();
     }
 
     public Token simpleGrammar(NonTerminal nt)
     {
         enterRule(nt);
-        Token token = expectRetrieve(nt);
+        Token token = token();
+        expect(nt);
         exitRule(nt);
         return token;
     }
 
+    // like simpleGrammar(), without making a Token
+    private Token.Kind simpleKind(NonTerminal nt)
+    {
+        enterRule(nt);
+        Token.Kind kind = kind();
+        expect(nt);
+        exitRule(nt);
+        return kind;
+    }
+
     // literal := INTEGER | FLOAT | TRUE | FALSE .
     public ast.Expression literal()
     {
         ast.Expression expr;
         enterRule(NonTerminal.LITERAL);
 
-        Token tok = expectRetrieve(NonTerminal.LITERAL);
-        expr = Command.newLiteral(tok);
+        int lineNum = lineNumber();
+        int charPos = charPosition();
+        Token.Kind kind = kind();
+        int value = value();
+        String rangeError = isOutOfRange() ? reportRangeError() : null;
+        expect(NonTerminal.LITERAL);
+        if (rangeError != null)
+            expr = new ast.Error(lineNum, charPos, rangeError);
+        else
+            expr = Command.newLiteral(kind, value, lineNum, charPos);
 
         exitRule(NonTerminal.LITERAL);
         return expr;
@@ -121,11 +311,12 @@ public class Parser {
     {
         enterRule(NonTerminal.DESIGNATOR);
 
-        Token token = new Token(this.currentToken);
+        int lineNum = lineNumber();
+        int charPos = charPosition();
         Expression expression = new AddressOf(
                 lineNumber(),
                 charPosition(),
-                tryResolveSymbol(expectRetrieve(Token.Kind.IDENTIFIER)));
+                tryResolveSymbol());
         while (accept(Token.Kind.OPEN_BRACKET)) {
             expression = new Index(
                     lineNumber(),
@@ -137,7 +328,7 @@ public class Parser {
 
         exitRule(NonTerminal.DESIGNATOR);
         if (!isAssignment)
-            return new Dereference(token.lineNumber(), token.charPosition(), expression);
+            return new Dereference(lineNum, charPos, expression);
         else
             return expression;
     }
@@ -151,8 +342,9 @@ public class Parser {
     // type := IDENTIFIER .
     public Type type()
     {
-        Token token = simpleGrammar(NonTerminal.TYPE);
-        return Type.getBaseType(token.lexeme());
+        String name = lexeme();
+        simpleKind(NonTerminal.TYPE);
+        return Type.getBaseType(name);
     }
 
     // op0 := ">=" | "<=" | "!=" | "==" | ">" | "<" .
@@ -176,11 +368,17 @@ public class Parser {
     // expression0 := expression1 [ op0 expression1 ] .
     public Expression expression0()
     {
+        // a listener hears about every level, without one the levels are climbed in a loop
+        if (listener == null)
+            return expression(COMPARISON);
+
         enterRule(NonTerminal.EXPRESSION0);
 
         Expression expression = expression1();
         if(have(NonTerminal.OP0)) {
-            expression = Command.newExpression(expression, op0(), expression1());
+            int lineNum = lineNumber();
+            int charPos = charPosition();
+            expression = Command.newExpression(expression, simpleKind(NonTerminal.OP0), lineNum, charPos, expression1());
         }
 
         exitRule(NonTerminal.EXPRESSION0);
@@ -194,7 +392,9 @@ public class Parser {
 
         Expression expression = expression2();
         while (have(NonTerminal.OP1)) {
-            expression = Command.newExpression(expression, op1(), expression2());
+            int lineNum = lineNumber();
+            int charPos = charPosition();
+            expression = Command.newExpression(expression, simpleKind(NonTerminal.OP1), lineNum, charPos, expression2());
         }
 
         exitRule(NonTerminal.EXPRESSION1);
@@ -208,13 +408,36 @@ public class Parser {
 
         Expression expression = expression3();
         while (have(NonTerminal.OP2)) {
-            expression = Command.newExpression(expression, op2(), expression3());
+            int lineNum = lineNumber();
+            int charPos = charPosition();
+            expression = Command.newExpression(expression, simpleKind(NonTerminal.OP2), lineNum, charPos, expression3());
         }
 
         exitRule(NonTerminal.EXPRESSION2);
         return expression;
     }
 
+    /* Parses the operators binding at least as tightly as minPower, and
+     * builds the same nodes as the expression0 to expression2 rules: the
+     * operators of a level associate to the left, a comparison does not
+     * associate at all.
+     */
+    private Expression expression(int minPower)
+    {
+        Expression expression = expression3();
+        int power;
+        while ((power = BINDING_POWER[kind().ordinal()]) >= minPower) {
+            int lineNum = lineNumber();
+            int charPos = charPosition();
+            Token.Kind operator = kind();
+            advance();
+            expression = Command.newExpression(expression, operator, lineNum, charPos, expression(power + 1));
+            if (power == COMPARISON)
+                break;
+        }
+        return expression;
+    }
+
     /* expression3 := "not" expression3
      * | "(" expression0 ")"
      * | designator
@@ -223,12 +446,16 @@ public class Parser {
      */
     public Expression expression3()
     {
+        if (isTooDeep())
+            return (Expression) predictiveParser().parse(NonTerminal.EXPRESSION3);
         enterRule(NonTerminal.EXPRESSION3);
+        nesting++;
 
         Expression expression;
-        Token token = new Token(this.currentToken);
+        int lineNum = lineNumber();
+        int charPos = charPosition();
         if (accept(Token.Kind.NOT)){
-            expression = Command.newExpression(expression3(), token, null);
+            expression = Command.newExpression(expression3(), Token.Kind.NOT, lineNum, charPos, null);
         } else if (accept(Token.Kind.OPEN_PAREN)) {
             expression = expression0();
             expect(Token.Kind.CLOSE_PAREN);
@@ -242,6 +469,7 @@ public class Parser {
             throw new QuitParseException(reportSyntaxError(NonTerminal.EXPRESSION3));
         }
 
+        nesting--;
         exitRule(NonTerminal.EXPRESSION3);
         return expression;
     }
@@ -251,9 +479,10 @@ public class Parser {
     {
         enterRule(NonTerminal.CALL_EXPRESSION);
 
-        Token token = new Token(this.currentToken);
+        int lineNum = lineNumber();
+        int charPos = charPosition();
         expect(Token.Kind.CALL);
-        Symbol symbol = tryResolveSymbol(expectRetrieve(Token.Kind.IDENTIFIER));
+        Symbol symbol = tryResolveSymbol();
         if (SymbolTable.isPredefined(symbol.name())) {
             symbol.setType(FuncType.predefinedFunc(symbol.name()));
         }
@@ -262,7 +491,7 @@ public class Parser {
         expect(Token.Kind.CLOSE_PAREN);
 
         exitRule(NonTerminal.CALL_EXPRESSION);
-        return new Call(token.lineNumber(), token.charPosition(), symbol, expressionList);
+        return new Call(lineNum, charPos, symbol, expressionList);
     }
 
     // expression-list := [ expression0 { "," expression0 } ] .
@@ -288,7 +517,7 @@ public class Parser {
     {
         enterRule(NonTerminal.VARIABLE_DECLARATION);
 
-        Symbol symbol = tryDeclareSymbol(expectRetrieve(Token.Kind.IDENTIFIER));
+        Symbol symbol = tryDeclareSymbol();
         VariableDeclaration variableDeclaration = new VariableDeclaration(
                 lineNumber(),
                 charPosition(),
@@ -325,9 +554,10 @@ public class Parser {
     {
         enterRule(NonTerminal.VARIABLE_DECLARATION);
 
-        Token token = new Token(this.currentToken);
+        int lineNum = lineNumber();
+        int charPos = charPosition();
         expect(Token.Kind.VAR);
-        Symbol symbol = tryDeclareSymbol(expectRetrieve(Token.Kind.IDENTIFIER));
+        Symbol symbol = tryDeclareSymbol();
         expect(Token.Kind.COLON);
         Type type = type();
         symbol.setType(type);
@@ -335,8 +565,8 @@ public class Parser {
 
         exitRule(NonTerminal.VARIABLE_DECLARATION);
         return new VariableDeclaration(
-                token.lineNumber(),
-                token.charPosition(),
+                lineNum,
+                charPos,
                 symbol);
     }
 
@@ -346,34 +576,33 @@ public class Parser {
         enterRule(NonTerminal.ARRAY_DECLARATION);
         Stack<Integer> arrayExtends = new Stack<Integer>();
 
-        Token token = new Token(this.currentToken);
+        int lineNum = lineNumber();
+        int charPos = charPosition();
         expect(Token.Kind.ARRAY);
-        Symbol symbol = tryDeclareSymbol(expectRetrieve(Token.Kind.IDENTIFIER));
+        Symbol symbol = tryDeclareSymbol();
         expect(Token.Kind.COLON);
         Type baseType = type();
         expect(Token.Kind.OPEN_BRACKET);
-        Token intToken = expectRetrieve(Token.Kind.INTEGER);
-        arrayExtends.push(Integer.parseInt(intToken.lexeme()));
+        arrayExtends.push(expectInteger());
         expect(Token.Kind.CLOSE_BRACKET);
 
         while (accept(Token.Kind.OPEN_BRACKET)) {
-            intToken = expectRetrieve(Token.Kind.INTEGER);
-            arrayExtends.push(Integer.parseInt(intToken.lexeme()));
+            arrayExtends.push(expectInteger());
             expect(Token.Kind.CLOSE_BRACKET);
         }
 
         Type arrayType = null;
         while (!arrayExtends.empty()) {
             int extend = arrayExtends.pop();
-            arrayType = new ArrayType(extend, arrayType == null? baseType : arrayType);
+            arrayType = ArrayType.of(extend, arrayType == null? baseType : arrayType);
         }
         symbol.setType(arrayType);
         expect(Token.Kind.SEMICOLON);
 
         exitRule(NonTerminal.ARRAY_DECLARATION);
         return new ArrayDeclaration(
-                token.lineNumber(),
-                token.charPosition(),
+                lineNum,
+                charPos,
                 symbol
         );
     }
@@ -384,9 +613,10 @@ public class Parser {
     {
         enterRule(NonTerminal.FUNCTION_DEFINITION);
 
-        Token token = new Token(this.currentToken);
+        int lineNum = lineNumber();
+        int charPos = charPosition();
         expect(Token.Kind.FUNC);
-        Symbol symbol = tryDeclareSymbol(expectRetrieve(Token.Kind.IDENTIFIER));
+        Symbol symbol = tryDeclareSymbol();
         expect(Token.Kind.OPEN_PAREN);
 
         enterScope();
@@ -395,13 +625,13 @@ public class Parser {
         expect(Token.Kind.CLOSE_PAREN);
         expect(Token.Kind.COLON);
         Type type = type();
-        symbol.setType(new FuncType(parameterList.toTypeList(), type));
-        StatementList statementList = statementBlock();
+        symbol.setType(FuncType.of(parameterList.toTypeList(), type));
+        StatementList statementList = functionBody();
 
         exitRule(NonTerminal.FUNCTION_DEFINITION);
         return new FunctionDefinition(
-                token.lineNumber(),
-                token.charPosition(),
+                lineNum,
+                charPos,
                 symbol,
                 parameterList.toSymbolList(),
                 statementList
@@ -448,7 +678,8 @@ public class Parser {
     {
         enterRule(NonTerminal.ASSIGNMENT_STATEMENT);
 
-        Token token = new Token(this.currentToken);
+        int lineNum = lineNumber();
+        int charPos = charPosition();
         expect(Token.Kind.LET);
         Expression dest = designator(true);
         expect(Token.Kind.ASSIGN);
@@ -457,8 +688,8 @@ public class Parser {
 
         exitRule(NonTerminal.ASSIGNMENT_STATEMENT);
         return new Assignment(
-                token.lineNumber(),
-                token.charPosition(),
+                lineNum,
+                charPos,
                 dest,
                 source
         );
@@ -481,7 +712,8 @@ public class Parser {
     {
         enterRule(NonTerminal.IF_STATEMENT);
 
-        Token token = new Token(this.currentToken);
+        int lineNum = lineNumber();
+        int charPos = charPosition();
         expect(Token.Kind.IF);
         Expression condition = expression0();
 
@@ -501,8 +733,8 @@ public class Parser {
 
         exitRule(NonTerminal.IF_STATEMENT);
         return new IfElseBranch(
-                token.lineNumber(),
-                token.charPosition(),
+                lineNum,
+                charPos,
                 condition,
                 thenBlock,
                 elseBlock
@@ -514,7 +746,8 @@ public class Parser {
     {
         enterRule(NonTerminal.WHILE_STATEMENT);
 
-        Token token = new Token(this.currentToken);
+        int lineNum = lineNumber();
+        int charPos = charPosition();
         expect(Token.Kind.WHILE);
         Expression condition = expression0();
 
@@ -524,8 +757,8 @@ public class Parser {
 
         exitRule(NonTerminal.WHILE_STATEMENT);
         return new WhileLoop(
-                token.lineNumber(),
-                token.charPosition(),
+                lineNum,
+                charPos,
                 condition,
                 block
         );
@@ -536,15 +769,16 @@ public class Parser {
     {
         enterRule(NonTerminal.RETURN_STATEMENT);
 
-        Token token = new Token(this.currentToken);
+        int lineNum = lineNumber();
+        int charPos = charPosition();
         expect(Token.Kind.RETURN);
         Expression expression = expression0();
         expect(Token.Kind.SEMICOLON);
 
         exitRule(NonTerminal.RETURN_STATEMENT);
         return new Return(
-                token.lineNumber(),
-                token.charPosition(),
+                lineNum,
+                charPos,
                 expression
         );
     }
@@ -599,12 +833,16 @@ public class Parser {
     // statement-block := "{" statement-list "}" .
     public StatementList statementBlock()
     {
+        if (isTooDeep())
+            return (StatementList) predictiveParser().parse(NonTerminal.STATEMENT_BLOCK);
         enterRule(NonTerminal.STATEMENT_BLOCK);
+        nesting++;
 
         expect(Token.Kind.OPEN_BRACE);
         StatementList statementList = statementList();
         expect(Token.Kind.CLOSE_BRACE);
 
+        nesting--;
         exitScope();
         exitRule(NonTerminal.STATEMENT_BLOCK);
         return statementList;
@@ -621,21 +859,221 @@ public class Parser {
         return declarationList;
     }
 
+// Deep Nesting ==========================================
+    // Blocks and expressions nest by recursion, a few calls per level. Past
+    // this many levels the rest of the construct is left to the
+    // PredictiveParser, whose stacks are on the heap. A ParseListener is told
+    // about every rule, so with one the recursion goes all the way down.
+    private static final int MAX_NESTING = 64;
+
+    private int nesting;
+    private PredictiveParser predictiveParser;
+
+    private boolean isTooDeep()
+    {
+        return nesting == MAX_NESTING && listener == null;
+    }
+
+    private PredictiveParser predictiveParser()
+    {
+        if (predictiveParser == null)
+            predictiveParser = new PredictiveParser(this, Grammar.crux());
+        return predictiveParser;
+    }
+
+// Parallel Parsing ==========================================
+    // a task parses bodies until they add up to this many tokens
+    private static final int MIN_TASK_TOKENS = 4096;
+    private static final int NO_MATCH = -1;
+
+    // only while parseParallel() parses the declarations
+    private List<DeferredBody> deferredBodies;
+    private int[] matchingBrace;
+
+    private static final class DeferredBody {
+        final StatementList body;
+        final int open;
+        final int close;
+        final PersistentSymbolTable scope;
+        boolean failed;
+
+        DeferredBody(StatementList body, int open, int close, PersistentSymbolTable scope)
+        {
+            this.body = body;
+            this.open = open;
+            this.close = close;
+            this.scope = scope;
+        }
+    }
+
+    public ast.Command parseParallel()
+    {
+        return parseParallel(ForkJoinPool.commonPool());
+    }
+
+    /* Parses like parse(), with the function bodies parsed in parallel on pool.
+     * The declarations are parsed in order first, but each function body is
+     * only matched up to its closing brace and kept for later, along with the
+     * PersistentSymbolTable of its scopes as they are at that point. The
+     * bodies are then parsed on the pool, each into the StatementList
+     * already in its FunctionDefinition. A program with any error is parsed
+     * once more with parse(), so that the report is exactly the one parse()
+     * gives.
+     * Only a Parser over a TokenBuffer can skip ahead to the bodies, and the
+     * ParseListener does not hear about the rules inside them.
+     */
+    public ast.Command parseParallel(ForkJoinPool pool)
+    {
+        if (tokens == null)
+            throw new IllegalStateException("Parsing in parallel needs a TokenBuffer.");
+        current = 0;
+        matchingBrace = matchBraces(tokens);
+        deferredBodies = new ArrayList<DeferredBody>();
+        ast.Command program;
+        List<DeferredBody> bodies;
+        try {
+            program = parse();
+        } finally {
+            bodies = deferredBodies;
+            deferredBodies = null;
+            matchingBrace = null;
+        }
+
+        boolean failed = hasError();
+        if (!failed && !bodies.isEmpty()) {
+            pool.invoke(new BodyTask(tokens, bodies, 0, bodies.size()));
+            for (DeferredBody body : bodies)
+                failed |= body.failed;
+        }
+        if (!failed)
+            return program;
+
+        errorBuffer.setLength(0);
+        current = 0;
+        return parse();
+    }
+
+    // the index of the '}' closing each '{', or NO_MATCH
+    private static int[] matchBraces(TokenBuffer tokens)
+    {
+        int[] match = new int[tokens.size()];
+        int[] open = new int[64];
+        int depth = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            match[i] = NO_MATCH;
+            if (tokens.is(i, Token.Kind.OPEN_BRACE)) {
+                if (depth == open.length)
+                    open = Arrays.copyOf(open, depth * 2);
+                open[depth++] = i;
+            } else if (tokens.is(i, Token.Kind.CLOSE_BRACE) && depth > 0) {
+                match[open[--depth]] = i;
+            }
+        }
+        return match;
+    }
+
+    // the statement-block of a function-definition, unless parseParallel() leaves it for later
+    private StatementList functionBody()
+    {
+        if (deferredBodies == null || !have(Token.Kind.OPEN_BRACE) || matchingBrace[current] == NO_MATCH)
+            return statementBlock();
+
+        // the body resolves names in the scopes as they are now
+        PersistentSymbolTable scope = ((PersistentSymbolTable.Cursor) symbolTable).version();
+
+        int open = current;
+        int close = matchingBrace[open];
+        advance();
+        StatementList body = new StatementList(lineNumber(), charPosition());
+        current = close + 1;
+        exitScope();
+
+        deferredBodies.add(new DeferredBody(body, open, close, scope));
+        return body;
+    }
+
+    // Parses the statements of a deferred body into it, returns false on any error
+    private static boolean parseBody(TokenBuffer tokens, DeferredBody deferred)
+    {
+        Parser parser = new Parser(tokens);
+        parser.current = deferred.open + 1;
+        parser.symbolTable = new PersistentSymbolTable.Cursor(deferred.scope);
+        try {
+            while (parser.have(NonTerminal.STATEMENT))
+                deferred.body.add(parser.statement());
+            parser.expect(Token.Kind.CLOSE_BRACE);
+        } catch (QuitParseException q) {
+            return false;
+        }
+        return !parser.hasError() && parser.current == deferred.close + 1;
+    }
+
+    private static final class BodyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TokenBuffer tokens;
+        private final List<DeferredBody> bodies;
+        private final int from;
+        private final int to;
+
+        BodyTask(TokenBuffer tokens, List<DeferredBody> bodies, int from, int to)
+        {
+            this.tokens = tokens;
+            this.bodies = bodies;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            int tokenCount = bodies.get(to - 1).close - bodies.get(from).open;
+            if (to - from > 1 && tokenCount > MIN_TASK_TOKENS) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BodyTask(tokens, bodies, from, middle), new BodyTask(tokens, bodies, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                DeferredBody body = bodies.get(i);
+                body.failed = !parseBody(tokens, body);
+            }
+        }
+    }
+
+// Incremental Parsing ==========================================
+    // the IncrementalParser parses a run of top-level declarations at a time,
+    // declaring them in a global scope it keeps between edits. A global it
+    // parses again is declared with its old Symbol, taken from reusableGlobals,
+    // so that the declarations it keeps still refer to it.
+    private Map<String, Symbol> reusableGlobals;
+
+    void startAt(int index, Scope globals, Map<String, Symbol> reusableGlobals)
+    {
+        current = index;
+        symbolTable = globals;
+        this.reusableGlobals = reusableGlobals;
+    }
+
+    int tokenIndex()
+    {
+        return current;
+    }
+
 // Helper Methods ==========================================
-    private boolean have(Token.Kind kind)
+    boolean have(Token.Kind kind)
     {
-        return currentToken.is(kind);
+        return kind() == kind;
     }
 
-    private boolean have(NonTerminal nt)
+    boolean have(NonTerminal nt)
     {
-        return nt.firstSet().contains(currentToken.kind());
+        return (nt.firstMask() & Grammar.bit(kind().ordinal())) != 0;
     }
 
     private boolean accept(Token.Kind kind)
     {
         if (have(kind)) {
-            currentToken = scanner.next();
+            advance();
             return true;
         }
         return false;
@@ -644,7 +1082,7 @@ public class Parser {
     private boolean accept(NonTerminal nt)
     {
         if (have(nt)) {
-            currentToken = scanner.next();
+            advance();
             return true;
         }
         return false;
@@ -666,50 +1104,70 @@ public class Parser {
         throw new QuitParseException(errorMessage);
     }
 
-    private Token expectRetrieve(Token.Kind kind)
+    private String expectIdentifier()
     {
-        Token tok = currentToken;
-        if (accept(kind))
-            return tok;
-        String errorMessage = reportSyntaxError(kind);
-        throw new QuitParseException(errorMessage);
+        String name = have(Token.Kind.IDENTIFIER) ? lexeme() : null;
+        expect(Token.Kind.IDENTIFIER);
+        return name;
     }
 
-    private Token expectRetrieve(NonTerminal nt)
+    private int expectInteger()
     {
-        Token tok = currentToken;
-        if (accept(nt))
-            return tok;
-        String errorMessage = reportSyntaxError(nt);
-        throw new QuitParseException(errorMessage);
+        if (have(Token.Kind.INTEGER) && isOutOfRange())
+            throw new QuitParseException(reportRangeError());
+        int value = value();
+        expect(Token.Kind.INTEGER);
+        return value;
     }
 
 // SymbolTable Management ==========================
-    private SymbolTable symbolTable;
+    private Scope symbolTable;
+    private boolean resolveNames = true;
+
+    /* Without resolving names, every symbol in the tree is an Identifier
+     * and no ResolveSymbolError or DeclareSymbolError is reported. A Resolver
+     * binds them afterwards, and reports those errors instead.
+     */
+    public void setResolveNames(boolean resolveNames)
+    {
+        this.resolveNames = resolveNames;
+    }
     
+    // parseParallel() keeps versions of the scopes for the bodies it defers
     private void initSymbolTable()
     {
-        symbolTable = new SymbolTable(null);
+        if (deferredBodies == null)
+            symbolTable = new ScopeStack();
+        else
+            symbolTable = new PersistentSymbolTable.Cursor(new PersistentSymbolTable());
     }
     
-    private void enterScope()
+    void enterScope()
     {
-        symbolTable = new SymbolTable(symbolTable);
+        symbolTable = symbolTable.enterScope();
     }
     
-    private void exitScope()
+    void exitScope()
+    {
+        symbolTable = symbolTable.exitScope();
+    }
+
+    private Symbol tryResolveSymbol()
     {
-        symbolTable = symbolTable.parent;
+        int lineNum = reportedLineNumber();
+        int charPos = reportedCharPosition();
+        String name = expectIdentifier();
+        return resolveSymbol(name, lineNum, charPos);
     }
 
-    private Symbol tryResolveSymbol(Token ident)
+    Symbol resolveSymbol(String name, int lineNum, int charPos)
     {
-        assert(ident.is(Token.Kind.IDENTIFIER));
-        String name = ident.lexeme();
+        if (!resolveNames)
+            return new Identifier(name, lineNum, charPos);
         try {
             return symbolTable.lookup(name);
         } catch (SymbolNotFoundError e) {
-            String message = reportResolveSymbolError(name, ident.lineNumber(), ident.charPosition());
+            String message = reportResolveSymbolError(name, lineNum, charPos);
             return new ErrorSymbol(message);
         }
     }
@@ -722,14 +1180,27 @@ public class Parser {
         return message;
     }
 
-    private Symbol tryDeclareSymbol(Token ident)
+    private Symbol tryDeclareSymbol()
+    {
+        int lineNum = reportedLineNumber();
+        int charPos = reportedCharPosition();
+        String name = expectIdentifier();
+        return declareSymbol(name, lineNum, charPos);
+    }
+
+    Symbol declareSymbol(String name, int lineNum, int charPos)
     {
-        assert(ident.is(Token.Kind.IDENTIFIER));
-        String name = ident.lexeme();
+        if (!resolveNames)
+            return new Identifier(name, lineNum, charPos);
         try {
+            if (reusableGlobals != null && symbolTable.isGlobal()) {
+                Symbol reused = reusableGlobals.remove(name);
+                if (reused != null)
+                    return symbolTable.insert(reused);
+            }
             return symbolTable.insert(name);
         } catch (RedeclarationError re) {
-            String message = reportDeclareSymbolError(name, ident.lineNumber(), ident.charPosition());
+            String message = reportDeclareSymbolError(name, lineNum, charPos);
             return new ErrorSymbol(message);
         }
     }
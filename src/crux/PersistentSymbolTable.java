@@ -0,0 +1,281 @@
+package crux;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/* An immutable symbol table, of which enterScope(), insert() and
+ * exitScope() return new versions.
+ *
+ * Every name visible in a version is bound in a hash array mapped trie, to
+ * its innermost declaration and the depth of the scope that declared it.
+ * A new version copies only the path of trie nodes down to the one name it
+ * declares and shares the rest, and a name declared again in a nested scope
+ * simply replaces the outer binding in the nested version. Exiting a scope
+ * returns the version the scope was entered from.
+ *
+ * Lookups, redeclarations and toString() are those of a chain of
+ * SymbolTables. Since a version never changes, any number of threads may
+ * read any versions without locking, and keeping a version, of the global
+ * scope or any other, costs nothing.
+ */
+public final class PersistentSymbolTable {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private final Node root;
+    private final int depth;
+    // the version this scope was entered from
+    private final PersistentSymbolTable parent;
+    // the declarations of this scope, the latest first
+    private final Entry entries;
+
+    // the global scope, with the predefined functions declared
+    public PersistentSymbolTable()
+    {
+        PersistentSymbolTable global = new PersistentSymbolTable(Node.EMPTY, 0, null, null);
+        for (String name : SymbolTable.PREDEFINED_IDENTIFIERS)
+            global = global.insert(name);
+        root = global.root;
+        depth = 0;
+        parent = null;
+        entries = global.entries;
+    }
+
+    private PersistentSymbolTable(Node root, int depth, PersistentSymbolTable parent, Entry entries)
+    {
+        this.root = root;
+        this.depth = depth;
+        this.parent = parent;
+        this.entries = entries;
+    }
+
+    public PersistentSymbolTable enterScope()
+    {
+        return new PersistentSymbolTable(root, depth + 1, this, null);
+    }
+
+    public PersistentSymbolTable exitScope()
+    {
+        if (parent == null)
+            throw new IllegalStateException("The global scope cannot be exited.");
+        return parent;
+    }
+
+    public Symbol lookup(String name) throws SymbolNotFoundError
+    {
+        Binding binding = root.find(name, name.hashCode());
+        if (binding == null)
+            throw new SymbolNotFoundError(name);
+        return binding.symbol;
+    }
+
+    public PersistentSymbolTable insert(String name) throws RedeclarationError
+    {
+        return insert(new Symbol(name));
+    }
+
+    public PersistentSymbolTable insert(Symbol symbol) throws RedeclarationError
+    {
+        String name = symbol.name();
+        Node newRoot = root.put(new Binding(name, name.hashCode(), symbol, depth, null), 0);
+        return new PersistentSymbolTable(newRoot, depth, parent, new Entry(symbol, entries));
+    }
+
+    public String toString()
+    {
+        List<PersistentSymbolTable> scopes = new ArrayList<PersistentSymbolTable>();
+        for (PersistentSymbolTable scope = this; scope != null; scope = scope.parent)
+            scopes.add(scope);
+
+        StringBuffer sb = new StringBuffer();
+        List<Symbol> symbols = new ArrayList<Symbol>();
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            PersistentSymbolTable scope = scopes.get(i);
+            String indent = new String();
+            for (int d = 0; d < scope.depth; d++)
+                indent += "  ";
+
+            symbols.clear();
+            for (Entry entry = scope.entries; entry != null; entry = entry.previous)
+                symbols.add(entry.symbol);
+            for (int j = symbols.size() - 1; j >= 0; j--)
+                sb.append(indent + symbols.get(j).toString() + "\n");
+        }
+        return sb.toString();
+    }
+
+    private static final class Entry {
+        final Symbol symbol;
+        final Entry previous;
+
+        Entry(Symbol symbol, Entry previous)
+        {
+            this.symbol = symbol;
+            this.previous = previous;
+        }
+    }
+
+    // the innermost declaration of a name, next is another name with the same hash
+    private static final class Binding {
+        final String name;
+        final int hash;
+        final Symbol symbol;
+        final int depth;
+        final Binding next;
+
+        Binding(String name, int hash, Symbol symbol, int depth, Binding next)
+        {
+            this.name = name;
+            this.hash = hash;
+            this.symbol = symbol;
+            this.depth = depth;
+            this.next = next;
+        }
+
+        // these bindings with binding in place of the one for its name
+        Binding with(Binding binding) throws RedeclarationError
+        {
+            if (name.equals(binding.name)) {
+                if (depth == binding.depth)
+                    throw new RedeclarationError(symbol);
+                return new Binding(name, hash, binding.symbol, binding.depth, next);
+            }
+            Binding rest = next == null ? null : next.with(binding);
+            if (rest == null)
+                rest = new Binding(binding.name, hash, binding.symbol, binding.depth, null);
+            return new Binding(name, hash, symbol, depth, rest);
+        }
+    }
+
+    /* A node takes the next BITS bits of the hash. The bitmap tells which
+     * of its slots are in use, and they are stored in order, each either a
+     * Binding or a Node for the hashes that share those bits.
+     */
+    private static final class Node {
+        static final Node EMPTY = new Node(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots)
+        {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        Binding find(String name, int hash)
+        {
+            Node node = this;
+            int shift = 0;
+            while (true) {
+                int bit = 1 << ((hash >>> shift) & MASK);
+                if ((node.bitmap & bit) == 0)
+                    return null;
+                Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+                if (slot instanceof Node) {
+                    node = (Node) slot;
+                    shift += BITS;
+                    continue;
+                }
+                for (Binding binding = (Binding) slot; binding != null; binding = binding.next) {
+                    if (binding.hash == hash && binding.name.equals(name))
+                        return binding;
+                }
+                return null;
+            }
+        }
+
+        // throws a RedeclarationError if the name is already bound at the same depth
+        Node put(Binding binding, int shift) throws RedeclarationError
+        {
+            int bit = 1 << ((binding.hash >>> shift) & MASK);
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, index);
+                newSlots[index] = binding;
+                System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+                return new Node(bitmap | bit, newSlots);
+            }
+
+            Object slot = slots[index];
+            Object newSlot;
+            if (slot instanceof Node) {
+                newSlot = ((Node) slot).put(binding, shift + BITS);
+            } else {
+                Binding existing = (Binding) slot;
+                if (existing.hash == binding.hash)
+                    newSlot = existing.with(binding);
+                else
+                    newSlot = EMPTY.put(existing, shift + BITS).put(binding, shift + BITS);
+            }
+            Object[] newSlots = slots.clone();
+            newSlots[index] = newSlot;
+            return new Node(bitmap, newSlots);
+        }
+    }
+
+    /* A Scope that moves on to the new version on each insert or scope
+     * change, for code written against the mutable tables.
+     */
+    static final class Cursor implements Scope {
+
+        private PersistentSymbolTable version;
+
+        Cursor(PersistentSymbolTable version)
+        {
+            this.version = version;
+        }
+
+        PersistentSymbolTable version()
+        {
+            return version;
+        }
+
+        @Override
+        public Cursor enterScope()
+        {
+            version = version.enterScope();
+            return this;
+        }
+
+        @Override
+        public Cursor exitScope()
+        {
+            version = version.exitScope();
+            return this;
+        }
+
+        @Override
+        public Symbol lookup(String name) throws SymbolNotFoundError
+        {
+            return version.lookup(name);
+        }
+
+        @Override
+        public boolean isGlobal()
+        {
+            return version.parent == null;
+        }
+
+        @Override
+        public Symbol insert(String name) throws RedeclarationError
+        {
+            return insert(new Symbol(name));
+        }
+
+        @Override
+        public Symbol insert(Symbol symbol) throws RedeclarationError
+        {
+            version = version.insert(symbol);
+            return symbol;
+        }
+
+        @Override
+        public String toString()
+        {
+            return version.toString();
+        }
+    }
+}
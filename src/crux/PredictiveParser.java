@@ -0,0 +1,307 @@
+package crux;
+
+import ast.*;
+import types.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/* A table-driven LL(1) parser for Crux.
+ *
+ * Instead of one method per rule, it keeps the symbols still to be matched
+ * on an explicit stack. A terminal on top must match the current token, a
+ * nonterminal is replaced by the production the Grammar's table predicts
+ * for the current token, and an Action builds ast nodes on a value stack,
+ * taking node positions from a stack of marks.
+ *
+ * The tokens, the symbol table and the error report are those of the
+ * Parser it runs for, so both report the same errors and build the same
+ * nodes. Like the Parser it stops after the last declaration, without
+ * requiring the EOF.
+ */
+final class PredictiveParser {
+
+    private static final int INITIAL_DEPTH = 64;
+
+    private final Parser parser;
+    private final Grammar grammar;
+
+    private int[] symbols = new int[INITIAL_DEPTH];
+    private int symbolCount;
+
+    private Object[] values = new Object[INITIAL_DEPTH];
+    private int valueCount;
+
+    private int[] markLines = new int[INITIAL_DEPTH];
+    private int[] markChars = new int[INITIAL_DEPTH];
+    private int markCount;
+
+    PredictiveParser(Parser parser, Grammar grammar)
+    {
+        this.parser = parser;
+        this.grammar = grammar;
+    }
+
+    // throws Parser.QuitParseException on the first syntax error
+    DeclarationList parse()
+    {
+        return (DeclarationList) parse(NonTerminal.PROGRAM);
+    }
+
+    // parses one rule from the current token and returns its node
+    Object parse(NonTerminal rule)
+    {
+        symbolCount = 0;
+        valueCount = 0;
+        markCount = 0;
+        pushSymbol(Grammar.symbol(rule));
+        while (symbolCount > 0) {
+            int symbol = symbols[--symbolCount];
+            if (symbol < 0) {
+                perform(Grammar.Action.of(symbol));
+            } else if (Grammar.isTerminal(symbol)) {
+                if (parser.kind().ordinal() != symbol)
+                    throw new Parser.QuitParseException(parser.reportSyntaxError(Token.Kind.values()[symbol]));
+                parser.advance();
+            } else {
+                int production = grammar.predict(symbol, parser.kind());
+                if (production == Grammar.NONE)
+                    throw new Parser.QuitParseException(parser.reportSyntaxError(grammar.nonTerminal(symbol)));
+                int[] body = grammar.production(production);
+                for (int i = body.length - 1; i >= 0; i--)
+                    pushSymbol(body[i]);
+            }
+        }
+        return pop();
+    }
+
+    private void perform(Grammar.Action action)
+    {
+        switch (action) {
+            case MARK:
+                mark();
+                break;
+            case DROP_MARK:
+                markCount--;
+                break;
+            case DROP_VALUE:
+                pop();
+                break;
+            case PUSH_LITERAL:
+                pushLiteral();
+                break;
+            case PUSH_TYPE:
+                push(Type.getBaseType(parser.lexeme()));
+                break;
+            case PUSH_OPERATOR:
+                push(parser.kind());
+                break;
+            case MAKE_BINARY: {
+                Expression right = (Expression) pop();
+                Token.Kind operator = (Token.Kind) pop();
+                Expression left = (Expression) pop();
+                markCount--;
+                push(Command.newExpression(left, operator, markLines[markCount], markChars[markCount], right));
+                break;
+            }
+            case MAKE_NOT: {
+                Expression operand = (Expression) pop();
+                markCount--;
+                push(Command.newExpression(operand, Token.Kind.NOT, markLines[markCount], markChars[markCount], null));
+                break;
+            }
+            case RESOLVE:
+                // without an IDENTIFIER the terminal after this reports the error
+                if (parser.have(Token.Kind.IDENTIFIER))
+                    push(parser.resolveSymbol(parser.lexeme(), parser.reportedLineNumber(), parser.reportedCharPosition()));
+                break;
+            case RESOLVE_FUNCTION:
+                if (parser.have(Token.Kind.IDENTIFIER)) {
+                    Symbol symbol = parser.resolveSymbol(parser.lexeme(), parser.reportedLineNumber(), parser.reportedCharPosition());
+                    if (SymbolTable.isPredefined(symbol.name()))
+                        symbol.setType(FuncType.predefinedFunc(symbol.name()));
+                    push(symbol);
+                }
+                break;
+            case MAKE_ADDRESS:
+                push(new AddressOf(markLines[markCount - 1], markChars[markCount - 1], (Symbol) pop()));
+                break;
+            case MAKE_INDEX: {
+                Expression amount = (Expression) pop();
+                Expression base = (Expression) pop();
+                markCount--;
+                push(new Index(markLines[markCount], markChars[markCount], base, amount));
+                break;
+            }
+            case MAKE_DEREFERENCE:
+                markCount--;
+                push(new Dereference(markLines[markCount], markChars[markCount], (Expression) pop()));
+                break;
+            case MAKE_CALL: {
+                ExpressionList arguments = (ExpressionList) pop();
+                Symbol symbol = (Symbol) pop();
+                markCount--;
+                push(new Call(markLines[markCount], markChars[markCount], symbol, arguments));
+                break;
+            }
+            case NEW_EXPRESSION_LIST:
+                push(new ExpressionList(parser.lineNumber(), parser.charPosition()));
+                break;
+            case ADD_EXPRESSION: {
+                Expression expression = (Expression) pop();
+                ((ExpressionList) peek()).add(expression);
+                break;
+            }
+            case DECLARE:
+                if (parser.have(Token.Kind.IDENTIFIER))
+                    push(parser.declareSymbol(parser.lexeme(), parser.reportedLineNumber(), parser.reportedCharPosition()));
+                break;
+            case SET_SYMBOL_TYPE: {
+                Type type = (Type) pop();
+                ((Symbol) peek()).setType(type);
+                break;
+            }
+            case MAKE_VARIABLE:
+                markCount--;
+                push(new VariableDeclaration(markLines[markCount], markChars[markCount], (Symbol) pop()));
+                break;
+            case PUSH_EXTENT:
+                if (parser.have(Token.Kind.INTEGER) && parser.isOutOfRange())
+                    throw new Parser.QuitParseException(parser.reportRangeError());
+                push(parser.value());
+                break;
+            case MAKE_ARRAY_TYPE:
+                makeArrayType();
+                break;
+            case MAKE_ARRAY:
+                markCount--;
+                push(new ArrayDeclaration(markLines[markCount], markChars[markCount], (Symbol) pop()));
+                break;
+            case MAKE_FUNCTION_TYPE: {
+                Type returnType = (Type) pop();
+                DeclarationList parameters = (DeclarationList) peek();
+                ((Symbol) values[valueCount - 2]).setType(FuncType.of(parameters.toTypeList(), returnType));
+                break;
+            }
+            case MAKE_FUNCTION: {
+                StatementList body = (StatementList) pop();
+                DeclarationList parameters = (DeclarationList) pop();
+                Symbol symbol = (Symbol) pop();
+                markCount--;
+                push(new FunctionDefinition(markLines[markCount], markChars[markCount], symbol, parameters.toSymbolList(), body));
+                break;
+            }
+            case NEW_DECLARATION_LIST:
+                push(new DeclarationList(parser.lineNumber(), parser.charPosition()));
+                break;
+            case ADD_DECLARATION: {
+                Declaration declaration = (Declaration) pop();
+                ((DeclarationList) peek()).add(declaration);
+                break;
+            }
+            case MAKE_ASSIGNMENT: {
+                Expression source = (Expression) pop();
+                Expression dest = (Expression) pop();
+                markCount--;
+                push(new Assignment(markLines[markCount], markChars[markCount], dest, source));
+                break;
+            }
+            case NEW_ELSE_BLOCK:
+            case NEW_STATEMENT_LIST:
+                push(new StatementList(parser.lineNumber(), parser.charPosition()));
+                break;
+            case MAKE_IF: {
+                StatementList elseBlock = (StatementList) pop();
+                StatementList thenBlock = (StatementList) pop();
+                Expression condition = (Expression) pop();
+                markCount--;
+                push(new IfElseBranch(markLines[markCount], markChars[markCount], condition, thenBlock, elseBlock));
+                break;
+            }
+            case MAKE_WHILE: {
+                StatementList body = (StatementList) pop();
+                Expression condition = (Expression) pop();
+                markCount--;
+                push(new WhileLoop(markLines[markCount], markChars[markCount], condition, body));
+                break;
+            }
+            case MAKE_RETURN:
+                markCount--;
+                push(new Return(markLines[markCount], markChars[markCount], (Expression) pop()));
+                break;
+            case ADD_STATEMENT: {
+                Statement statement = (Statement) pop();
+                ((StatementList) peek()).add(statement);
+                break;
+            }
+            case ENTER_SCOPE:
+                parser.enterScope();
+                break;
+            case EXIT_SCOPE:
+                parser.exitScope();
+                break;
+        }
+    }
+
+    // the token is matched by the terminal after this action
+    private void pushLiteral()
+    {
+        int lineNum = parser.lineNumber();
+        int charPos = parser.charPosition();
+        if (parser.isOutOfRange())
+            push(new ast.Error(lineNum, charPos, parser.reportRangeError()));
+        else
+            push(Command.newLiteral(parser.kind(), parser.value(), lineNum, charPos));
+    }
+
+    // the innermost array type takes the last extent, the outermost the first
+    private void makeArrayType()
+    {
+        List<Integer> extents = new ArrayList<Integer>();
+        while (peek() instanceof Integer)
+            extents.add((Integer) pop());
+        Type arrayType = (Type) pop();
+        for (int extent : extents)
+            arrayType = ArrayType.of(extent, arrayType);
+        ((Symbol) peek()).setType(arrayType);
+    }
+
+// Stacks ==========================================
+    private void pushSymbol(int symbol)
+    {
+        if (symbolCount == symbols.length)
+            symbols = Arrays.copyOf(symbols, symbolCount * 2);
+        symbols[symbolCount++] = symbol;
+    }
+
+    private void push(Object value)
+    {
+        if (valueCount == values.length)
+            values = Arrays.copyOf(values, valueCount * 2);
+        values[valueCount++] = value;
+    }
+
+    private Object pop()
+    {
+        Object value = values[--valueCount];
+        values[valueCount] = null;
+        return value;
+    }
+
+    private Object peek()
+    {
+        return values[valueCount - 1];
+    }
+
+    private void mark()
+    {
+        if (markCount == markLines.length) {
+            markLines = Arrays.copyOf(markLines, markCount * 2);
+            markChars = Arrays.copyOf(markChars, markCount * 2);
+        }
+        markLines[markCount] = parser.lineNumber();
+        markChars[markCount] = parser.charPosition();
+        markCount++;
+    }
+}
@@ -0,0 +1,262 @@
+package crux;
+
+import java.util.List;
+
+import ast.*;
+import types.ErrorType;
+import types.FuncType;
+import types.Type;
+
+/* Binds the names of a tree parsed without resolving them.
+ *
+ * It walks the declarations and statements in source order, through the
+ * same scopes as the Parser: one for a function's parameters and body, and
+ * one for each block of an if or while. Each Identifier of a declaration
+ * is declared in its scope, each of a reference is replaced by the Symbol
+ * it finds, so the tree ends up as the Parser would have built it, and the
+ * ResolveSymbolErrors and DeclareSymbolErrors are reported as it would
+ * have reported them, in the same order and with the same scopes listed.
+ *
+ * Only a tree without syntax errors can be resolved this way, the errors a
+ * Parser reports before it quits on a syntax error are not recovered.
+ */
+public class Resolver implements CommandVisitor {
+
+    private Scope symbolTable;
+    private StringBuffer errorBuffer = new StringBuffer();
+
+    public boolean resolve(Command ast)
+    {
+        symbolTable = new ScopeStack();
+        ast.accept(this);
+        return !hasError();
+    }
+
+    public boolean hasError()
+    {
+        return errorBuffer.length() != 0;
+    }
+
+    public String errorReport()
+    {
+        return errorBuffer.toString();
+    }
+
+// SymbolTable Management ==========================
+    private void enterScope()
+    {
+        symbolTable = symbolTable.enterScope();
+    }
+
+    private void exitScope()
+    {
+        symbolTable = symbolTable.exitScope();
+    }
+
+    private Symbol resolveSymbol(Symbol reference)
+    {
+        if (!(reference instanceof Identifier))
+            return reference;
+        Identifier identifier = (Identifier) reference;
+        try {
+            return symbolTable.lookup(identifier.name());
+        } catch (SymbolNotFoundError e) {
+            String message = "ResolveSymbolError(" + identifier.lineNumber() + "," + identifier.charPosition() + ")[Could not find " + identifier.name() + ".]";
+            return reportError(message);
+        }
+    }
+
+    // the Parser sets the type of a redeclared symbol on its ErrorSymbol
+    private Symbol declareSymbol(Symbol declaration)
+    {
+        if (!(declaration instanceof Identifier))
+            return declaration;
+        Identifier identifier = (Identifier) declaration;
+        try {
+            return symbolTable.insert(identifier);
+        } catch (RedeclarationError re) {
+            String message = "DeclareSymbolError(" + identifier.lineNumber() + "," + identifier.charPosition() + ")[" + identifier.name() + " already exists.]";
+            Symbol symbol = reportError(message);
+            symbol.setType(identifier.type());
+            return symbol;
+        }
+    }
+
+    private Symbol reportError(String message)
+    {
+        errorBuffer.append(message + "\n");
+        errorBuffer.append(symbolTable.toString() + "\n");
+        return new ErrorSymbol(message);
+    }
+
+    private void walk(Object node)
+    {
+        ((Command) node).accept(this);
+    }
+
+// Visitor ==========================================
+    @Override
+    public void visit(ExpressionList node) {
+        for (Expression expression : node)
+            walk(expression);
+    }
+
+    @Override
+    public void visit(DeclarationList node) {
+        for (Declaration declaration : node)
+            walk(declaration);
+    }
+
+    @Override
+    public void visit(StatementList node) {
+        for (Statement statement : node)
+            walk(statement);
+    }
+
+    @Override
+    public void visit(AddressOf node) {
+        node.setSymbol(resolveSymbol(node.symbol()));
+    }
+
+    @Override
+    public void visit(LiteralBool node) {
+    }
+
+    @Override
+    public void visit(LiteralFloat node) {
+    }
+
+    @Override
+    public void visit(LiteralInt node) {
+    }
+
+    @Override
+    public void visit(VariableDeclaration node) {
+        node.setSymbol(declareSymbol(node.symbol()));
+    }
+
+    @Override
+    public void visit(ArrayDeclaration node) {
+        node.setSymbol(declareSymbol(node.symbol()));
+    }
+
+    @Override
+    public void visit(FunctionDefinition node) {
+        Symbol function = declareSymbol(node.function());
+        node.setFunction(function);
+
+        // the Parser types the function after its parameters, a redeclared
+        // parameter lists it untyped
+        Type signature = function.type();
+        function.setType(new ErrorType("Type not set."));
+        enterScope();
+        List<Symbol> arguments = node.arguments();
+        for (int i = 0; i < arguments.size(); i++)
+            arguments.set(i, declareSymbol(arguments.get(i)));
+        function.setType(signature);
+
+        walk(node.body());
+        exitScope();
+    }
+
+    @Override
+    public void visit(Addition node) {
+        walk(node.leftSide());
+        walk(node.rightSide());
+    }
+
+    @Override
+    public void visit(Subtraction node) {
+        walk(node.leftSide());
+        walk(node.rightSide());
+    }
+
+    @Override
+    public void visit(Multiplication node) {
+        walk(node.leftSide());
+        walk(node.rightSide());
+    }
+
+    @Override
+    public void visit(Division node) {
+        walk(node.leftSide());
+        walk(node.rightSide());
+    }
+
+    @Override
+    public void visit(LogicalAnd node) {
+        walk(node.leftSide());
+        walk(node.rightSide());
+    }
+
+    @Override
+    public void visit(LogicalOr node) {
+        walk(node.leftSide());
+        walk(node.rightSide());
+    }
+
+    @Override
+    public void visit(LogicalNot node) {
+        walk(node.expression());
+    }
+
+    @Override
+    public void visit(Comparison node) {
+        walk(node.leftSide());
+        walk(node.rightSide());
+    }
+
+    @Override
+    public void visit(Dereference node) {
+        walk(node.expression());
+    }
+
+    @Override
+    public void visit(Index node) {
+        walk(node.base());
+        walk(node.amount());
+    }
+
+    @Override
+    public void visit(Assignment node) {
+        walk(node.destination());
+        walk(node.source());
+    }
+
+    @Override
+    public void visit(Call node) {
+        Symbol symbol = resolveSymbol(node.function());
+        if (SymbolTable.isPredefined(symbol.name()))
+            symbol.setType(FuncType.predefinedFunc(symbol.name()));
+        node.setFunction(symbol);
+        walk(node.arguments());
+    }
+
+    @Override
+    public void visit(IfElseBranch node) {
+        walk(node.condition());
+        enterScope();
+        walk(node.thenBlock());
+        exitScope();
+        enterScope();
+        walk(node.elseBlock());
+        exitScope();
+    }
+
+    @Override
+    public void visit(WhileLoop node) {
+        walk(node.condition());
+        enterScope();
+        walk(node.body());
+        exitScope();
+    }
+
+    @Override
+    public void visit(Return node) {
+        walk(node.argument());
+    }
+
+    @Override
+    public void visit(ast.Error node) {
+    }
+}
@@ -1,9 +1,23 @@
 package crux;
 
+import java.io.ByteArrayInputStream;
+import java.io.CharArrayReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class Scanner implements Iterable<Token>, Iterator<Token> {
 
@@ -13,14 +27,41 @@ public class Scanner implements Iterable<Token>, Iterator<Token> {
 	
 	private int lineNum;  // current line count
 	private int charPos;  // character offset for current line
-	private int nextChar; // contains the next char (-1 == EOF)
-	private Reader input;
 
-	// stringBuffer is used to store the extra characters read by the programme
-	// this is used to reset the reader
-	private String stringBuffer;
+	// the whole source is kept in one buffer, tokens refer to their lexeme by
+	// offset and length, and stepping back over characters is moving position
+	private char[] source;
+	private int length;
+	private int position; // offset of the first character not yet tokenized
 	private boolean isReachedEOF;
 
+	// the same source as bytes, when it is plain ASCII, so that whitespace
+	// and comments can be skipped a word at a time, see skipWhitespace()
+	private ByteBuffer bytes;
+
+	// without positions, scan() leaves lineNum and charPos alone and tokens
+	// are located by offset only, see tokenizeOffsets()
+	private boolean tracksPositions = true;
+
+	// the last token found by scan()
+	private int tokenOffset;
+	private int tokenLength;
+	private int tokenLine;
+	private int tokenColumn;
+	private int tokenValue;
+
+	private static final int BLOCK_SIZE = 8192;
+
+	// TABLE runs the precomputed TransitionTable, STATE_LIST is the original
+	// simulation over a list of states, kept to compare token streams against
+	public enum Engine {
+		TABLE,
+		STATE_LIST
+	}
+
+	private final Engine engine;
+	private final TransitionTable table = TransitionTable.instance();
+
 	private enum State {
 		START,
 		END,
@@ -33,32 +74,127 @@ public class Scanner implements Iterable<Token>, Iterator<Token> {
 	}
 	
 	Scanner(Reader reader) {
+		this(reader, Engine.TABLE);
+	}
+
+	Scanner(Reader reader, Engine engine) {
 		// initialize the Scanner
-		input = reader;
+		this.engine = engine;
+		lineNum = 1;
+		charPos = 1;
+		position = 0;
+		readSource(reader);
+		isReachedEOF = false;
+	}
+
+	// Maps the file and decodes its bytes directly, input that cannot be mapped
+	// or is not plain ASCII goes through a Reader as before
+	Scanner(Path path) throws IOException {
+		this(path, Engine.TABLE);
+	}
+
+	Scanner(Path path, Engine engine) throws IOException {
+		this.engine = engine;
+		lineNum = 1;
+		charPos = 1;
+		position = 0;
+		if (!Files.isRegularFile(path) || Files.size(path) > Integer.MAX_VALUE || !mapSource(path)) {
+			try (Reader reader = new InputStreamReader(Files.newInputStream(path))) {
+				readSource(reader);
+			}
+		}
+		isReachedEOF = false;
+	}
+
+	// Decodes bytes read in full by the caller, e.g. to hash them as well
+	Scanner(byte[] bytes) {
+		this.engine = Engine.TABLE;
 		lineNum = 1;
 		charPos = 1;
-		stringBuffer = "";
-		nextChar = readChar();
+		position = 0;
+		if (!decodeSource(ByteBuffer.wrap(bytes)))
+			readSource(new InputStreamReader(new ByteArrayInputStream(bytes)));
 		isReachedEOF = false;
 	}
+
+	private boolean mapSource(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return decodeSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	// takes bytes that are all plain ASCII as the source, and returns false for any others
+	private boolean decodeSource(ByteBuffer bytes) {
+		length = bytes.limit();
+		source = new char[length];
+		for (int i = 0; i < length; i++) {
+			byte b = bytes.get(i);
+			if (b < 0)
+				return false;
+			source[i] = (char) b;
+		}
+		this.bytes = bytes.order(ByteOrder.LITTLE_ENDIAN);
+		return true;
+	}
+
+	// scans source[begin, end) as one chunk of a larger input
+	private Scanner(char[] source, ByteBuffer bytes, int begin, int end, int lineNum, int charPos) {
+		this.engine = Engine.TABLE;
+		this.source = source;
+		this.bytes = bytes;
+		this.length = end;
+		this.position = begin;
+		this.lineNum = lineNum;
+		this.charPos = charPos;
+		isReachedEOF = false;
+	}
+
+	private void readSource(Reader reader) {
+		source = new char[BLOCK_SIZE];
+		length = 0;
+		try {
+			int n;
+			while ((n = reader.read(source, length, source.length - length)) != -1) {
+				length += n;
+				if (length == source.length)
+					source = Arrays.copyOf(source, source.length * 2);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		// '\uffff' has always been read as the end of the input
+		boolean isAscii = true;
+		for (int i = 0; i < length; i++) {
+			if (source[i] == 65535) {
+				length = i;
+				break;
+			}
+			if (source[i] >= 128)
+				isAscii = false;
+		}
+
+		if (isAscii) {
+			byte[] ascii = new byte[length];
+			for (int i = 0; i < length; i++)
+				ascii[i] = (byte) source[i];
+			bytes = ByteBuffer.wrap(ascii).order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
 	
 	// OPTIONAL: helper function for reading a single char from input
 	//           can be used to catch and handle any IOExceptions,
 	//           advance the charPos or lineNum, etc.
 
+	// always advances, so that stepping back stays symmetric past the end
 	private int readChar() {
-		int c = -2;
-		if (!stringBuffer.isEmpty()) {
-			c = stringBuffer.charAt(0);
-			stringBuffer = stringBuffer.substring(1);
-		} else {
-			try {
-				c = input.read();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
-		return c == 65535? -1 : c;
+		int c = charAt(position);
+		position++;
+		return c;
+	}
+
+	private int charAt(int offset) {
+		return offset < length ? source[offset] : -1;
 	}
 
 	@Override
@@ -67,11 +203,428 @@ public class Scanner implements Iterable<Token>, Iterator<Token> {
 	}
 
 	/* Invariants:
-     *  1. call assumes that nextChar is already holding an unread character
-     *  2. return leaves nextChar containing an untokenized character
+     *  1. call assumes that position is the offset of an untokenized character
+     *  2. return leaves position at the first untokenized character
      */
 	public Token next()
 	{
+		if (engine == Engine.STATE_LIST)
+			return nextFromStateList();
+		return nextFromTable();
+	}
+
+	private Token nextFromTable()
+	{
+		Token.Kind kind = scan();
+		if (kind == Token.Kind.EOF)
+			return Token.EOF(tokenLine, tokenColumn);
+		return new Token(kind, source, tokenOffset, tokenLength, tokenValue, tokenLine, tokenColumn);
+	}
+
+	// Scans the next token without allocating, its kind is returned and
+	// its extent and position are left in the token* fields
+	private Token.Kind scan()
+	{
+		while (true) {
+			// whitespace and comments are not part of the transition table
+			skipWhitespace();
+			int c = charAt(position);
+
+			tokenOffset = position;
+			tokenLine = lineNum;
+			tokenColumn = charPos;
+			tokenValue = 0;
+
+			if (c == -1) {
+				isReachedEOF = true;
+				tokenLength = 0;
+				return Token.Kind.EOF;
+			}
+
+			if (isDigit(c))
+				return scanNumber();
+			if (c == '/' && charAt(position + 1) == '/') {
+				skipComment();
+				continue;
+			}
+
+			// maximal munch: follow the table as far as it goes and keep the last accepting state
+			int begin = position;
+			int state = table.start();
+			int acceptState = TransitionTable.NONE;
+			int acceptEnd = begin;
+			int next;
+			for (int i = begin; i < length && (next = table.next(state, source[i])) != TransitionTable.NONE; i++) {
+				state = next;
+				if (table.accepts(state) != null) {
+					acceptState = state;
+					acceptEnd = i + 1;
+				}
+			}
+
+			Token.Kind kind;
+			if (acceptState == TransitionTable.NONE) {
+				// no token starts here, the first character alone is reported
+				kind = Token.Kind.ERROR;
+				acceptEnd = begin + 1;
+			} else {
+				kind = table.accepts(acceptState);
+				if (kind == Token.Kind.IDENTIFIER) {
+					Token.Kind keyword = Token.Kind.lookup(source, begin, acceptEnd - begin);
+					if (keyword != null)
+						kind = keyword;
+				}
+			}
+			position = acceptEnd;
+			if (tracksPositions)
+				charPos += acceptEnd - begin;
+			tokenLength = acceptEnd - begin;
+			return kind;
+		}
+	}
+
+	// SWAR constants, a byte of the word at a time
+	private static final long ONES = 0x0101010101010101L;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+	private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+	private static final long SPACES = ' ' * ONES;
+	private static final long TABS = '\t' * ONES;
+	private static final long NEWLINES = '\n' * ONES;
+
+	// Returns the high bit of every byte of word that equals the byte of pattern.
+	// Exact for ASCII, no carry runs from one byte into the next.
+	private static long matchBytes(long word, long pattern)
+	{
+		long x = word ^ pattern;
+		return ~(((x & LOW_BITS) + LOW_BITS) | x | LOW_BITS);
+	}
+
+	/* Skips spaces, tabs and newlines from position. Over an ASCII source
+	 * eight characters are classified at once: the run ends at the lowest
+	 * byte that is not blank, its newlines are counted with bitCount(), and
+	 * the character position restarts after the last of them.
+	 */
+	private void skipWhitespace()
+	{
+		if (bytes != null) {
+			while (position + 8 <= length) {
+				long word = bytes.getLong(position);
+				long newlines = matchBytes(word, NEWLINES);
+				long blanks = matchBytes(word, SPACES) | matchBytes(word, TABS) | newlines;
+				int run = Long.numberOfTrailingZeros(~blanks & HIGH_BITS) >>> 3;
+				if (tracksPositions) {
+					if (run < 8)
+						newlines &= (1L << (run * 8)) - 1;
+					if (newlines == 0) {
+						charPos += run;
+					} else {
+						lineNum += Long.bitCount(newlines);
+						charPos = run - ((63 - Long.numberOfLeadingZeros(newlines)) >>> 3);
+					}
+				}
+				position += run;
+				if (run < 8)
+					return;
+			}
+		}
+
+		int c = charAt(position);
+		if (tracksPositions) {
+			while (c == ' ' || c == '\t' || c == '\n') {
+				if (c == '\n') {
+					lineNum++;
+					charPos = 1;
+				} else {
+					charPos++;
+				}
+				c = charAt(++position);
+			}
+		} else {
+			while (c == ' ' || c == '\t' || c == '\n')
+				c = charAt(++position);
+		}
+	}
+
+	// Skips a comment from its "//" up to the newline that ends it
+	private void skipComment()
+	{
+		int begin = position;
+		if (bytes != null) {
+			while (position + 8 <= length) {
+				long newlines = matchBytes(bytes.getLong(position), NEWLINES);
+				if (newlines != 0) {
+					position += Long.numberOfTrailingZeros(newlines) >>> 3;
+					break;
+				}
+				position += 8;
+			}
+		}
+		while (position < length && source[position] != '\n')
+			position++;
+		if (tracksPositions)
+			charPos += position - begin;
+	}
+
+	// the largest integer a float holds exactly, and the powers of ten a float holds exactly
+	private static final long FLOAT_EXACT_MANTISSA = 1 << 24;
+	private static final float[] FLOAT_EXACT_POWERS_OF_TEN = {
+		1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+	};
+
+	/* Scans an INTEGER or FLOAT starting at position and leaves its value in
+	 * tokenValue, see Token.value(). The digits are accumulated as they are
+	 * consumed, an integer past Integer.MAX_VALUE stops accumulating and is
+	 * marked OUT_OF_RANGE. A float whose digits and scale are both exact in
+	 * float is one correctly rounded division, anything longer falls back to
+	 * Float.parseFloat() on the lexeme.
+	 */
+	private Token.Kind scanNumber()
+	{
+		int begin = position;
+		int i = begin;
+		long mantissa = 0;
+		while (i < length && isDigit(source[i])) {
+			if (mantissa <= Integer.MAX_VALUE)
+				mantissa = mantissa * 10 + (source[i] - '0');
+			i++;
+		}
+
+		Token.Kind kind;
+		if (i < length && isDot(source[i])) {
+			int fractionBegin = ++i;
+			while (i < length && isDigit(source[i])) {
+				if (mantissa <= Integer.MAX_VALUE)
+					mantissa = mantissa * 10 + (source[i] - '0');
+				i++;
+			}
+			int scale = i - fractionBegin;
+			float value;
+			if (mantissa <= FLOAT_EXACT_MANTISSA && scale < FLOAT_EXACT_POWERS_OF_TEN.length)
+				value = (float) mantissa / FLOAT_EXACT_POWERS_OF_TEN[scale];
+			else
+				value = Float.parseFloat(new String(source, begin, i - begin));
+			kind = Token.Kind.FLOAT;
+			tokenValue = Float.floatToIntBits(value);
+		} else {
+			kind = Token.Kind.INTEGER;
+			tokenValue = mantissa <= Integer.MAX_VALUE ? (int) mantissa : Token.OUT_OF_RANGE;
+		}
+
+		position = i;
+		if (tracksPositions)
+			charPos += i - begin;
+		tokenLength = i - begin;
+		return kind;
+	}
+
+	/* Scans the rest of the input into a TokenBuffer on the given pool.
+	 * No Crux token spans a line, so the input is cut into chunks just after
+	 * a newline, each chunk is scanned on its own, and the chunks are joined
+	 * with their line numbers shifted by the lines that came before them.
+	 */
+	public TokenBuffer tokenize(ForkJoinPool pool)
+	{
+		int chunkSize = Math.max(MIN_CHUNK_SIZE, (length - position) / (pool.getParallelism() * 4));
+		return tokenize(pool, chunkSize);
+	}
+
+	TokenBuffer tokenize(ForkJoinPool pool, int chunkSize)
+	{
+		if (engine == Engine.STATE_LIST || length - position <= chunkSize)
+			return tokenize();
+
+		List<ChunkScan> chunks = new ArrayList<ChunkScan>();
+		int begin = position;
+		while (begin < length) {
+			int end = Math.min(begin + chunkSize, length);
+			while (end < length && source[end - 1] != '\n')
+				end++;
+			if (chunks.isEmpty())
+				chunks.add(new ChunkScan(new Scanner(source, bytes, begin, end, lineNum, charPos), end == length));
+			else
+				chunks.add(new ChunkScan(new Scanner(source, bytes, begin, end, 1, 1), end == length));
+			begin = end;
+		}
+		for (ChunkScan chunk : chunks)
+			pool.execute(chunk);
+
+		TokenBuffer tokens = new TokenBuffer(source);
+		int lineOffset = 0;
+		for (ChunkScan chunk : chunks) {
+			tokens.append(chunk.join(), lineOffset);
+			// the next chunk starts on the line this one ended on
+			lineNum = chunk.scanner.lineNum + lineOffset;
+			charPos = chunk.scanner.charPos;
+			lineOffset = lineNum - 1;
+		}
+		position = length;
+		isReachedEOF = true;
+		return tokens;
+	}
+
+	private static final int MIN_CHUNK_SIZE = 1 << 16;
+
+	private static class ChunkScan extends RecursiveTask<TokenBuffer> {
+		private static final long serialVersionUID = 1L;
+
+		private final Scanner scanner;
+		private final boolean isLast;
+
+		ChunkScan(Scanner scanner, boolean isLast)
+		{
+			this.scanner = scanner;
+			this.isLast = isLast;
+		}
+
+		@Override
+		protected TokenBuffer compute()
+		{
+			// only the last chunk ends with the real EOF
+			TokenBuffer tokens = new TokenBuffer(scanner.source);
+			Token.Kind kind;
+			while ((kind = scanner.scan()) != Token.Kind.EOF)
+				tokens.add(kind, scanner.tokenOffset, scanner.tokenLength, scanner.tokenValue, scanner.tokenLine, scanner.tokenColumn);
+			if (isLast)
+				tokens.add(kind, scanner.tokenOffset, scanner.tokenLength, scanner.tokenValue, scanner.tokenLine, scanner.tokenColumn);
+			return tokens;
+		}
+	}
+
+	/* Scans the rest of the input into a TokenBuffer that records the source
+	 * offset of each token but no line number or character position. Those
+	 * are found through the LineMap of the buffer when someone asks for them.
+	 */
+	public TokenBuffer tokenizeOffsets()
+	{
+		TokenBuffer tokens = new TokenBuffer(source, new LineMap(source, length));
+		if (engine == Engine.STATE_LIST) {
+			TokenBuffer positioned = tokenize();
+			for (int i = 0; i < positioned.size(); i++)
+				tokens.add(positioned.kind(i), positioned.offset(i), positioned.length(i), positioned.value(i));
+			return tokens;
+		}
+
+		tracksPositions = false;
+		Token.Kind kind;
+		do {
+			kind = scan();
+			tokens.add(kind, tokenOffset, tokenLength, tokenValue);
+		} while (kind != Token.Kind.EOF);
+		return tokens;
+	}
+
+	/* Brings a token stream up to date with an edit of its source: the
+	 * characters [offset, offset + removedLength) replaced by insertedText.
+	 *
+	 * No token spans a line, so the tokens before the line the edit starts on
+	 * stay as they are, and scanning restarts at the beginning of that line.
+	 * Past the line the edit ends on, the first scanned token that starts
+	 * where an old token starts, moved by the edit, begins the same text as
+	 * before; the rest of the old stream is reused from there on, shifted by
+	 * the characters and lines the edit added or removed.
+	 */
+	public static TokenBuffer relex(TokenBuffer previous, int offset, int removedLength, String insertedText)
+	{
+		char[] oldSource = previous.source();
+		int oldLength = previous.offset(previous.size() - 1); // where the EOF is
+		int editEnd = offset + removedLength;
+		if (offset < 0 || removedLength < 0 || editEnd > oldLength)
+			throw new IllegalArgumentException("The edit [" + offset + ", " + editEnd + ") is outside of the source.");
+
+		int shift = insertedText.length() - removedLength;
+		int length = oldLength + shift;
+		char[] source = new char[length];
+		System.arraycopy(oldSource, 0, source, 0, offset);
+		insertedText.getChars(0, insertedText.length(), source, offset);
+		System.arraycopy(oldSource, editEnd, source, offset + insertedText.length(), oldLength - editEnd);
+
+		// '\uffff' ends the input wherever it is, nothing after it can be reused
+		if (insertedText.indexOf(65535) != -1) {
+			Scanner scanner = new Scanner(new CharArrayReader(source));
+			return previous.hasPositions() ? scanner.tokenize() : scanner.tokenizeOffsets();
+		}
+
+		// keep the tokens before the line of the edit
+		int lineStart = offset;
+		while (lineStart > 0 && oldSource[lineStart - 1] != '\n')
+			lineStart--;
+		int kept = 0;
+		while (previous.offset(kept) < lineStart)
+			kept++;
+
+		TokenBuffer tokens = previous.hasPositions() ? new TokenBuffer(source) : new TokenBuffer(source, new LineMap(source, length));
+		tokens.append(previous, 0, kept, 0, 0);
+
+		int lineNum = 1;
+		int counted = 0;
+		if (kept > 0) {
+			lineNum = previous.lineNumber(kept - 1);
+			counted = previous.offset(kept - 1);
+		}
+		for (int i = counted; i < lineStart; i++) {
+			if (oldSource[i] == '\n')
+				lineNum++;
+		}
+
+		// rescan until a token lines up with an old one past the line the edit ends on
+		Scanner scanner = new Scanner(source, null, lineStart, length, lineNum, 1);
+		scanner.tracksPositions = tokens.hasPositions();
+		int reusable = kept;
+		while (previous.offset(reusable) < editEnd)
+			reusable++;
+		int resyncAfter = offset + insertedText.length();
+		while (resyncAfter < length && source[resyncAfter] != '\n')
+			resyncAfter++;
+
+		Token.Kind kind;
+		do {
+			kind = scanner.scan();
+			if (scanner.tokenOffset > resyncAfter) {
+				while (previous.offset(reusable) + shift < scanner.tokenOffset)
+					reusable++;
+				if (previous.offset(reusable) + shift == scanner.tokenOffset) {
+					int lineShift = tokens.hasPositions() ? scanner.tokenLine - previous.lineNumber(reusable) : 0;
+					tokens.append(previous, reusable, previous.size(), shift, lineShift);
+					return tokens;
+				}
+			}
+			if (tokens.hasPositions())
+				tokens.add(kind, scanner.tokenOffset, scanner.tokenLength, scanner.tokenValue, scanner.tokenLine, scanner.tokenColumn);
+			else
+				tokens.add(kind, scanner.tokenOffset, scanner.tokenLength, scanner.tokenValue);
+		} while (kind != Token.Kind.EOF);
+		return tokens;
+	}
+
+	// Scans the rest of the input into a TokenBuffer, the last token is EOF
+	public TokenBuffer tokenize()
+	{
+		TokenBuffer tokens = new TokenBuffer(source);
+		if (engine == Engine.STATE_LIST) {
+			Token t;
+			do {
+				t = nextFromStateList();
+				if (t.is(Token.Kind.EOF)) {
+					tokens.add(t.kind(), length, 0, 0, t.lineNumber(), t.charPosition());
+				} else {
+					int lexemeLength = t.lexeme().length();
+					tokens.add(t.kind(), position - lexemeLength, lexemeLength, t.value(), t.lineNumber(), t.charPosition());
+				}
+			} while (!t.is(Token.Kind.EOF));
+			return tokens;
+		}
+
+		Token.Kind kind;
+		do {
+			kind = scan();
+			tokens.add(kind, tokenOffset, tokenLength, tokenValue, tokenLine, tokenColumn);
+		} while (kind != Token.Kind.EOF);
+		return tokens;
+	}
+
+	private Token nextFromStateList()
+	{
+		int nextChar = readChar();
 		State currentState;
 		LinkedList<State> nextStates = new LinkedList<State>();
 		nextStates.add(State.START);
@@ -211,10 +764,10 @@ public class Scanner implements Iterable<Token>, Iterator<Token> {
 				nextChar = readChar();
 		} while (!nextStates.isEmpty());
 
+		// step back over the characters read past the match
 		if (readString.length() > lastMatch.lexeme().length())
-			stringBuffer = readString.substring(lastMatch.lexeme().length());
+			position -= readString.length() - lastMatch.lexeme().length();
 
-		nextChar = readChar();
 		charPos += lastMatch.lexeme().length();
 		return lastMatch;
 	}
@@ -0,0 +1,24 @@
+package crux;
+
+/* The scopes a Parser or Resolver declares and resolves names in.
+ *
+ * enterScope() and exitScope() return the scope to go on with, which may
+ * be the same object. toString() lists the declarations of every scope, the
+ * outermost first and each nested one indented, for error reports.
+ */
+interface Scope {
+
+    Symbol lookup(String name) throws SymbolNotFoundError;
+
+    Symbol insert(String name) throws RedeclarationError;
+
+    // declares a Symbol made before its scope, e.g. by a Parser that does not resolve names
+    Symbol insert(Symbol symbol) throws RedeclarationError;
+
+    Scope enterScope();
+
+    Scope exitScope();
+
+    // whether names are declared in the global scope
+    boolean isGlobal();
+}
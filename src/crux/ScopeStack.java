@@ -0,0 +1,135 @@
+package crux;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/* A symbol table that keeps all of its scopes on one stack of declarations.
+ *
+ * Each name is interned to a dense id, and each id knows its innermost
+ * active declaration, whose entry in turn knows the one it shadows. A
+ * lookup is a map lookup and an array read however deeply the scopes nest,
+ * and entering a scope only marks the top of the stack, which exiting it
+ * pops back to.
+ *
+ * enterScope() and exitScope() return this same table, so it stands in for
+ * a chain of SymbolTables.
+ */
+public class ScopeStack implements Scope {
+
+    private static final int NONE = -1;
+
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+    // per id, its innermost active entry or NONE
+    private int[] innermost = new int[64];
+
+    // the declarations, of the outermost scope first
+    private Symbol[] symbols = new Symbol[64];
+    private int[] entryIds = new int[64];
+    private int[] shadowed = new int[64];
+    private int entryCount;
+
+    // the first entry of each scope
+    private int[] scopeStarts = new int[16];
+    private int scopeCount;
+
+    public ScopeStack()
+    {
+        scopeCount = 1;
+        for (String name : SymbolTable.PREDEFINED_IDENTIFIERS)
+            insert(name);
+    }
+
+    @Override
+    public ScopeStack enterScope()
+    {
+        if (scopeCount == scopeStarts.length)
+            scopeStarts = Arrays.copyOf(scopeStarts, scopeCount * 2);
+        scopeStarts[scopeCount++] = entryCount;
+        return this;
+    }
+
+    @Override
+    public ScopeStack exitScope()
+    {
+        if (scopeCount == 1)
+            throw new IllegalStateException("The global scope cannot be exited.");
+        int start = scopeStarts[--scopeCount];
+        while (entryCount > start) {
+            entryCount--;
+            innermost[entryIds[entryCount]] = shadowed[entryCount];
+            symbols[entryCount] = null;
+        }
+        return this;
+    }
+
+    @Override
+    public Symbol lookup(String name) throws SymbolNotFoundError
+    {
+        Integer id = ids.get(name);
+        if (id == null || innermost[id] == NONE)
+            throw new SymbolNotFoundError(name);
+        return symbols[innermost[id]];
+    }
+
+    @Override
+    public boolean isGlobal()
+    {
+        return scopeCount == 1;
+    }
+
+    @Override
+    public Symbol insert(String name) throws RedeclarationError
+    {
+        return insert(new Symbol(name));
+    }
+
+    @Override
+    public Symbol insert(Symbol symbol) throws RedeclarationError
+    {
+        int id = intern(symbol.name());
+        int entry = innermost[id];
+        if (entry != NONE && entry >= scopeStarts[scopeCount - 1])
+            throw new RedeclarationError(symbols[entry]);
+
+        if (entryCount == symbols.length) {
+            symbols = Arrays.copyOf(symbols, entryCount * 2);
+            entryIds = Arrays.copyOf(entryIds, entryCount * 2);
+            shadowed = Arrays.copyOf(shadowed, entryCount * 2);
+        }
+        symbols[entryCount] = symbol;
+        entryIds[entryCount] = id;
+        shadowed[entryCount] = entry;
+        innermost[id] = entryCount++;
+        return symbol;
+    }
+
+    private int intern(String name)
+    {
+        Integer id = ids.get(name);
+        if (id != null)
+            return id;
+        int newId = ids.size();
+        if (newId == innermost.length)
+            innermost = Arrays.copyOf(innermost, newId * 2);
+        innermost[newId] = NONE;
+        ids.put(name, newId);
+        return newId;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuffer sb = new StringBuffer();
+        String indent = "";
+        int scope = 0;
+        for (int entry = 0; entry < entryCount; entry++) {
+            while (scope + 1 < scopeCount && scopeStarts[scope + 1] <= entry) {
+                scope++;
+                indent += "  ";
+            }
+            sb.append(indent + symbols[entry].toString() + "\n");
+        }
+        return sb.toString();
+    }
+}
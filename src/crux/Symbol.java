@@ -37,11 +37,3 @@ public class Symbol {
         return new ErrorSymbol(message);
     }
 }
-
-class ErrorSymbol extends Symbol
-{
-    public ErrorSymbol(String message)
-    {
-        super(message);
-    }
-}
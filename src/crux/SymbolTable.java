@@ -3,9 +3,9 @@ package crux;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
-public class SymbolTable {
+public class SymbolTable implements Scope {
 
-    private static final String[] PREDEFINED_IDENTIFIERS =
+    static final String[] PREDEFINED_IDENTIFIERS =
             {
                     "readInt",
                     "readFloat",
@@ -43,30 +43,70 @@ public class SymbolTable {
         }
     }
     
-    public Symbol lookup(String name) throws SymbolNotFoundError
+    SymbolTable()
     {
-        Symbol s = symbolMap.get(name);
-        if (s == null)
-        {
-            if (parent != null)
-                return parent.lookup(name);
-            else
-                throw new SymbolNotFoundError(name);
+        symbolMap = new LinkedHashMap<String, Symbol>();
+    }
+
+    // the scope to declare in from here on, nested in this one
+    public SymbolTable enterScope()
+    {
+        return new SymbolTable(this);
+    }
+
+    // the scope to declare in once this one is done
+    public SymbolTable exitScope()
+    {
+        return parent;
+    }
+
+    public boolean isGlobal()
+    {
+        return parent == null;
+    }
+
+    int size()
+    {
+        return symbolMap.size();
+    }
+
+    // a new global scope that declares the first count symbols of this one, the same Symbol objects
+    SymbolTable prefix(int count)
+    {
+        SymbolTable scope = new SymbolTable();
+        for (Symbol s : symbolMap.values()) {
+            if (count-- == 0)
+                break;
+            scope.insert(s);
         }
-        else
+        return scope;
+    }
+
+    // walks the chain of scopes in a loop, it is as long as the blocks are deeply nested
+    public Symbol lookup(String name) throws SymbolNotFoundError
+    {
+        for (SymbolTable scope = this; scope != null; scope = scope.parent)
         {
-            return s;
+            Symbol s = scope.symbolMap.get(name);
+            if (s != null)
+                return s;
         }
+        throw new SymbolNotFoundError(name);
     }
        
     public Symbol insert(String name) throws RedeclarationError
     {
+        return insert(new Symbol(name));
+    }
+
+    public Symbol insert(Symbol symbol) throws RedeclarationError
+    {
+        String name = symbol.name();
         Symbol s = symbolMap.get(name);
         if (s == null)
         {
-            s = new Symbol(name);
-            symbolMap.put(name, s);
-            return s;
+            symbolMap.put(name, symbol);
+            return symbol;
         }
         else
         {
@@ -93,29 +133,3 @@ public class SymbolTable {
         return sb.toString();
     }
 }
-
-class SymbolNotFoundError extends Error
-{
-    private static final long serialVersionUID = 1L;
-    private String name;
-    
-    SymbolNotFoundError(String name)
-    {
-        this.name = name;
-    }
-    
-    public String name()
-    {
-        return name;
-    }
-}
-
-class RedeclarationError extends Error
-{
-    private static final long serialVersionUID = 1L;
-
-    public RedeclarationError(Symbol sym)
-    {
-        super("Symbol " + sym + " being redeclared.");
-    }
-}
@@ -1,5 +1,7 @@
 package crux;
 
+import java.nio.CharBuffer;
+
 public class Token {
 	
 	public enum Kind {
@@ -56,6 +58,51 @@ public class Token {
 				ADD, SUB, MUL, DIV, GREATER_EQUAL, LESSER_EQUAL, NOT_EQUAL, EQUAL, GREATER_THAN,
 				LESS_THAN, ASSIGN, COMMA, SEMICOLON, COLON, CALL};
 
+		// perfect hash from the static lexemes to their kind, the seed and the
+		// table size are searched once so that no two lexemes share a slot
+		private static Kind[] lexemeTable;
+		private static int lexemeMask;
+		private static int lexemeSeed;
+		private static final boolean[] isKeyword = new boolean[values().length];
+
+		static {
+			for (Kind kind : KEYWORDS)
+				isKeyword[kind.ordinal()] = true;
+
+			int size = Integer.highestOneBit(KEYWORDS.length + SPECIAL_CHARS.length) * 2;
+			search:
+			while (true) {
+				for (int seed = 1; seed < 1024; seed++) {
+					Kind[] table = new Kind[size];
+					if (fill(table, KEYWORDS, size - 1, seed) && fill(table, SPECIAL_CHARS, size - 1, seed)) {
+						lexemeTable = table;
+						lexemeMask = size - 1;
+						lexemeSeed = seed;
+						break search;
+					}
+				}
+				size *= 2;
+			}
+		}
+
+		private static boolean fill(Kind[] table, Kind[] kinds, int mask, int seed)
+		{
+			for (Kind kind : kinds) {
+				String lexeme = kind.default_lexeme;
+				int slot = hash(lexeme.charAt(0), lexeme.charAt(lexeme.length() - 1), lexeme.length(), mask, seed);
+				if (table[slot] != null)
+					return false;
+				table[slot] = kind;
+			}
+			return true;
+		}
+
+		private static int hash(int first, int last, int length, int mask, int seed)
+		{
+			int h = (first * seed + last) * 31 + length;
+			return (h ^ (h >>> 7)) & mask;
+		}
+
 		private String default_lexeme;
 		
 		Kind()
@@ -72,29 +119,57 @@ public class Token {
 		{
 			return default_lexeme != null;
 		}
+
+		String defaultLexeme()
+		{
+			return default_lexeme;
+		}
 		
 		// OPTIONAL: if you wish to also make convenience functions, feel free
 		//           for example, boolean matches(String lexeme)
 		//           can report whether a Token.Kind has the given lexeme
 
-		static boolean matches(String lexeme) {
-			return matchesWithSpecialChars(lexeme) || matchesWithKeywords(lexeme);
+		// Returns the keyword or special char spelled by buffer[offset, offset + length), or null
+		static Kind lookup(char[] buffer, int offset, int length) {
+			return lookup(buffer, null, offset, length);
 		}
 
-		private static boolean matchesWithKinds(Kind[] kinds, String s) {
-			for (Kind kind : kinds) {
-				if (kind.default_lexeme.equals(s))
-					return true;
+		static Kind lookup(CharSequence lexeme) {
+			return lookup(null, lexeme, 0, lexeme.length());
+		}
+
+		// the characters are read from buffer, or from text when there is no buffer
+		private static Kind lookup(char[] buffer, CharSequence text, int offset, int length) {
+			if (length == 0)
+				return null;
+			int first = charAt(buffer, text, offset);
+			int last = charAt(buffer, text, offset + length - 1);
+			Kind kind = lexemeTable[hash(first, last, length, lexemeMask, lexemeSeed)];
+			if (kind == null || kind.default_lexeme.length() != length)
+				return null;
+			for (int i = 0; i < length; i++) {
+				if (kind.default_lexeme.charAt(i) != charAt(buffer, text, offset + i))
+					return null;
 			}
-			return false;
+			return kind;
+		}
+
+		private static char charAt(char[] buffer, CharSequence text, int index) {
+			return buffer != null ? buffer[index] : text.charAt(index);
+		}
+
+		static boolean matches(String lexeme) {
+			return lookup(lexeme) != null;
 		}
 
 		static boolean matchesWithSpecialChars(String s) {
-			return matchesWithKinds(SPECIAL_CHARS, s);
+			Kind kind = lookup(s);
+			return kind != null && !isKeyword[kind.ordinal()];
 		}
 
 		static boolean matchesWithKeywords(String s) {
-			return matchesWithKinds(KEYWORDS, s);
+			Kind kind = lookup(s);
+			return kind != null && isKeyword[kind.ordinal()];
 		}
 
 		private static boolean startsWithKinds(Kind[] kinds, String s) {
@@ -119,6 +194,17 @@ public class Token {
 	private int charPos;
 	private Kind kind;
 	private String lexeme = "";
+
+	// the lexeme stays a slice of the scanned source until someone asks for it
+	private char[] source;
+	private int offset;
+	private int length;
+
+	// INTEGER and FLOAT tokens carry the value decoded by the Scanner: the
+	// int itself, or OUT_OF_RANGE when it does not fit, or the bits of the float
+	private int value;
+
+	static final int OUT_OF_RANGE = -1;
 	
 	
 	// OPTIONAL: implement factory functions for some tokens, as you see fit
@@ -140,6 +226,7 @@ public class Token {
 		Token t = new Token(lineNum, charPos);
 		t.kind = Kind.INTEGER;
 		t.lexeme = name;
+		t.value = integerValue(name);
 		return t;
 	}
 
@@ -147,9 +234,21 @@ public class Token {
 		Token t = new Token(lineNum, charPos);
 		t.kind = Kind.FLOAT;
 		t.lexeme = name;
+		t.value = Float.floatToIntBits(Float.parseFloat(name));
 		return t;
 	}
 
+	private static int integerValue(String digits)
+	{
+		long value = 0;
+		for (int i = 0; i < digits.length(); i++) {
+			value = value * 10 + (digits.charAt(i) - '0');
+			if (value > java.lang.Integer.MAX_VALUE)
+				return OUT_OF_RANGE;
+		}
+		return (int) value;
+	}
+
 	private Token(int lineNum, int charPos)
 	{
 		this.lineNum = lineNum;
@@ -166,12 +265,11 @@ public class Token {
 		this.charPos = charPos;
 		
 		// TODO: based on the given lexeme determine and set the actual kind
-		for (Kind kind : Kind.values()) {
-			if (kind.default_lexeme.equals(lexeme)){
-				this.kind = kind;
-				this.lexeme = lexeme;
-				return;
-			}
+		Kind kind = Kind.lookup(lexeme);
+		if (kind != null) {
+			this.kind = kind;
+			this.lexeme = kind.default_lexeme;
+			return;
 		}
 		
 		// if we don't match anything, signal error
@@ -179,13 +277,34 @@ public class Token {
 		this.lexeme = lexeme;
 	}
 
+	// used by the Scanner once the kind is already known from its transition table
+	Token(Kind kind, char[] source, int offset, int length, int value, int lineNum, int charPos)
+	{
+		this.lineNum = lineNum;
+		this.charPos = charPos;
+		this.kind = kind;
+		this.value = value;
+		if (kind.default_lexeme.isEmpty() || kind == Kind.ERROR) {
+			this.lexeme = null;
+			this.source = source;
+			this.offset = offset;
+			this.length = length;
+		} else {
+			this.lexeme = kind.default_lexeme;
+		}
+	}
+
 	// copy constructor
 	public Token(Token token)
 	{
 		this.lineNum = token.lineNumber();
 		this.charPos = token.charPosition();
 		this.kind = token.kind();
-		this.lexeme = token.lexeme();
+		this.lexeme = token.lexeme;
+		this.source = token.source;
+		this.offset = token.offset;
+		this.length = token.length;
+		this.value = token.value;
 	}
 	
 	public int lineNumber()
@@ -199,11 +318,42 @@ public class Token {
 	}
 
 	public Kind kind() { return kind; }
+
+	public int intValue() { return value; }
+
+	public float floatValue() { return Float.intBitsToFloat(value); }
+
+	// the value as stored in a TokenBuffer, intValue() or the bits of floatValue()
+	public int value() { return value; }
+
+	// Returns whether an INTEGER or FLOAT literal is too large for its type
+	public boolean isOutOfRange()
+	{
+		return isOutOfRange(kind, value);
+	}
+
+	static boolean isOutOfRange(Kind kind, int value)
+	{
+		if (kind == Kind.INTEGER)
+			return value == OUT_OF_RANGE;
+		if (kind == Kind.FLOAT)
+			return Float.isInfinite(Float.intBitsToFloat(value));
+		return false;
+	}
 	
 	// Return the lexeme representing or held by this token
 	public String lexeme()
 	{
-		// TODO: implement
+		if (this.lexeme == null)
+			this.lexeme = new String(source, offset, length);
+		return this.lexeme;
+	}
+
+	// Return the lexeme without materializing it as a String
+	public CharSequence lexemeView()
+	{
+		if (this.lexeme == null)
+			return CharBuffer.wrap(source, offset, length);
 		return this.lexeme;
 	}
 	
@@ -0,0 +1,204 @@
+package crux;
+
+import java.util.Arrays;
+
+/* A whole token stream packed into parallel primitive arrays.
+ *
+ * Token i is described by its kind, the offset and length of its lexeme in
+ * the source, its decoded value if it is a number (see Token.value()), and
+ * its line number and character position. Nothing is allocated per token;
+ * Token objects and lexeme Strings are only created when token() or
+ * lexeme() is asked for them.
+ *
+ * A buffer built with a LineMap stores no line numbers or character
+ * positions at all, they are looked up from the offset when asked for.
+ */
+public class TokenBuffer {
+
+    private static final Token.Kind[] KINDS = Token.Kind.values();
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final char[] source;
+    private final LineMap lineMap;
+    private int size;
+
+    private byte[] kinds;
+    private int[] offsets;
+    private int[] lengths;
+    private int[] values;
+    private int[] lines;
+    private int[] columns;
+
+    TokenBuffer(char[] source)
+    {
+        this(source, null);
+    }
+
+    TokenBuffer(char[] source, LineMap lineMap)
+    {
+        this.source = source;
+        this.lineMap = lineMap;
+        size = 0;
+        kinds = new byte[INITIAL_CAPACITY];
+        offsets = new int[INITIAL_CAPACITY];
+        lengths = new int[INITIAL_CAPACITY];
+        values = new int[INITIAL_CAPACITY];
+        if (lineMap == null) {
+            lines = new int[INITIAL_CAPACITY];
+            columns = new int[INITIAL_CAPACITY];
+        }
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity <= kinds.length)
+            return;
+        capacity = Math.max(capacity, kinds.length * 2);
+        kinds = Arrays.copyOf(kinds, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        values = Arrays.copyOf(values, capacity);
+        if (lines != null) {
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+        }
+    }
+
+    void add(Token.Kind kind, int offset, int length, int value, int lineNum, int charPos)
+    {
+        ensureCapacity(size + 1);
+        kinds[size] = (byte) kind.ordinal();
+        offsets[size] = offset;
+        lengths[size] = length;
+        values[size] = value;
+        lines[size] = lineNum;
+        columns[size] = charPos;
+        size++;
+    }
+
+    void add(Token.Kind kind, int offset, int length, int value)
+    {
+        ensureCapacity(size + 1);
+        kinds[size] = (byte) kind.ordinal();
+        offsets[size] = offset;
+        lengths[size] = length;
+        values[size] = value;
+        size++;
+    }
+
+    // appends all tokens of other, moving them lineOffset lines down
+    void append(TokenBuffer other, int lineOffset)
+    {
+        append(other, 0, other.size, 0, lineOffset);
+    }
+
+    // appends tokens [from, to) of other, shifted by offsetShift characters and lineShift lines
+    void append(TokenBuffer other, int from, int to, int offsetShift, int lineShift)
+    {
+        int count = to - from;
+        ensureCapacity(size + count);
+        System.arraycopy(other.kinds, from, kinds, size, count);
+        System.arraycopy(other.lengths, from, lengths, size, count);
+        System.arraycopy(other.values, from, values, size, count);
+        for (int i = 0; i < count; i++)
+            offsets[size + i] = other.offsets[from + i] + offsetShift;
+        if (lines != null) {
+            System.arraycopy(other.columns, from, columns, size, count);
+            for (int i = 0; i < count; i++)
+                lines[size + i] = other.lines[from + i] + lineShift;
+        }
+        size += count;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public char[] source()
+    {
+        return source;
+    }
+
+    public Token.Kind kind(int index)
+    {
+        return KINDS[kinds[index]];
+    }
+
+    public boolean is(int index, Token.Kind kind)
+    {
+        return kinds[index] == kind.ordinal();
+    }
+
+    public int offset(int index)
+    {
+        return offsets[index];
+    }
+
+    public int length(int index)
+    {
+        return lengths[index];
+    }
+
+    public int intValue(int index)
+    {
+        return values[index];
+    }
+
+    public float floatValue(int index)
+    {
+        return Float.intBitsToFloat(values[index]);
+    }
+
+    public int value(int index)
+    {
+        return values[index];
+    }
+
+    public boolean isOutOfRange(int index)
+    {
+        return Token.isOutOfRange(kind(index), values[index]);
+    }
+
+    public boolean hasPositions()
+    {
+        return lines != null;
+    }
+
+    public LineMap lineMap()
+    {
+        return lineMap;
+    }
+
+    public int lineNumber(int index)
+    {
+        if (lines == null)
+            return lineMap.lineNumber(offsets[index]);
+        return lines[index];
+    }
+
+    public int charPosition(int index)
+    {
+        if (columns == null)
+            return lineMap.charPosition(offsets[index]);
+        return columns[index];
+    }
+
+    public String lexeme(int index)
+    {
+        Token.Kind kind = kind(index);
+        if (kind == Token.Kind.EOF)
+            return token(index).lexeme();
+        if (!kind.defaultLexeme().isEmpty())
+            return kind.defaultLexeme();
+        return new String(source, offsets[index], lengths[index]);
+    }
+
+    public Token token(int index)
+    {
+        Token.Kind kind = kind(index);
+        if (kind == Token.Kind.EOF)
+            return Token.EOF(lineNumber(index), charPosition(index));
+        return new Token(kind, source, offsets[index], lengths[index], values[index], lineNumber(index), charPosition(index));
+    }
+}
@@ -0,0 +1,231 @@
+package crux;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/* Runs a Scanner on a thread of its own and hands its tokens to a single
+ * consumer, usually a Parser, through a bounded ring buffer.
+ *
+ * The ring has one producer and one consumer, so neither side takes a lock.
+ * The lexer thread fills slots and publishes its tail every BATCH_SIZE
+ * tokens, the consumer drains up to the published tail and publishes its
+ * head the same way. A side that finds the ring full (or empty) publishes
+ * its own index before it backs off, so the other side can always move on.
+ * When the ring is full the lexer parks until the consumer publishes a
+ * head that frees a batch of slots and wakes it, or until close(). A
+ * Parser closes its pipeline when a parse is done, so a parse that quits
+ * at a syntax error does not leave the lexer behind.
+ */
+public class TokenPipeline implements Iterator<Token>, AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final int BATCH_SIZE = 64;
+    private static final int SPINS = 64;
+    private static final long PARK_NANOS = 10000;
+
+    private final Token[] ring;
+    private final int mask;
+
+    // both count tokens from the start, a slot is the count modulo the capacity
+    private final AtomicLong head = new AtomicLong(); // consumed, as last published
+    private final AtomicLong tail = new AtomicLong(); // produced, as last published
+
+    private volatile boolean closed;
+    private volatile Throwable failure;
+
+    private Thread lexer;
+    private volatile boolean lexerParked;
+
+    // consumer side
+    private long consumed;
+    private long available;
+    private Token eof;
+
+    public TokenPipeline(Scanner scanner)
+    {
+        this(scanner, DEFAULT_CAPACITY);
+    }
+
+    // capacity is rounded up to a power of two of at least BATCH_SIZE
+    public TokenPipeline(final Scanner scanner, int capacity)
+    {
+        this(capacity);
+        start(new Runnable() {
+            public void run()
+            {
+                produce(scanner);
+            }
+        });
+    }
+
+    // Reads the file on the lexer thread as well, so that reading it overlaps with parsing
+    public TokenPipeline(final Path path)
+    {
+        this(DEFAULT_CAPACITY);
+        start(new Runnable() {
+            public void run()
+            {
+                Scanner scanner;
+                try {
+                    scanner = new Scanner(path);
+                } catch (IOException e) {
+                    failure = e;
+                    return;
+                }
+                produce(scanner);
+            }
+        });
+    }
+
+    private TokenPipeline(int capacity)
+    {
+        ring = new Token[Math.max(BATCH_SIZE, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1)];
+        mask = ring.length - 1;
+    }
+
+    private void start(Runnable lexing)
+    {
+        lexer = new Thread(lexing, "crux-lexer");
+        lexer.setDaemon(true);
+        lexer.start();
+    }
+
+// Producer ==========================================
+    private void produce(Scanner scanner)
+    {
+        long produced = 0;
+        long limit = ring.length; // the consumer's head plus the capacity, as last seen
+        try {
+            Token token;
+            do {
+                token = scanner.next();
+                if (produced == limit) {
+                    tail.lazySet(produced);
+                    limit = awaitSpace(produced);
+                    if (closed)
+                        return;
+                }
+                ring[(int) produced & mask] = token;
+                produced++;
+                if ((produced & (BATCH_SIZE - 1)) == 0) {
+                    tail.lazySet(produced);
+                    if (closed)
+                        return;
+                }
+            } while (!token.is(Token.Kind.EOF));
+            tail.lazySet(produced);
+        } catch (RuntimeException e) {
+            tail.set(produced);
+            failure = e;
+        } catch (Error e) {
+            tail.set(produced);
+            failure = e;
+        }
+    }
+
+    /* Spins, yields, then parks without a timeout. lexerParked is set
+     * before head is read again, and the consumer sets head before it reads
+     * lexerParked, so one of them always sees the other.
+     */
+    private long awaitSpace(long produced)
+    {
+        for (int tries = 0; !closed; tries++) {
+            long limit = head.get() + ring.length;
+            if (produced < limit)
+                return limit;
+            if (tries < 2 * SPINS) {
+                backOff(tries);
+                continue;
+            }
+            lexerParked = true;
+            if (head.get() + ring.length == produced && !closed)
+                LockSupport.park(this);
+            lexerParked = false;
+        }
+        return produced;
+    }
+
+// Consumer ==========================================
+    @Override
+    public boolean hasNext()
+    {
+        return eof == null;
+    }
+
+    // Returns the next token, and EOF again once the input is exhausted
+    @Override
+    public Token next()
+    {
+        if (eof != null)
+            return eof;
+        if (consumed == available) {
+            publishHead();
+            available = awaitTokens();
+        }
+
+        int slot = (int) consumed & mask;
+        Token token = ring[slot];
+        ring[slot] = null;
+        consumed++;
+        if ((consumed & (BATCH_SIZE - 1)) == 0)
+            publishHead();
+
+        if (token.is(Token.Kind.EOF))
+            eof = token;
+        return token;
+    }
+
+    private void publishHead()
+    {
+        head.set(consumed);
+        if (lexerParked)
+            LockSupport.unpark(lexer);
+    }
+
+    private long awaitTokens()
+    {
+        for (int tries = 0; ; tries++) {
+            long produced = tail.get();
+            if (produced != consumed)
+                return produced;
+            if (failure != null) {
+                // the lexer publishes what it produced before it records the failure
+                produced = tail.get();
+                if (produced != consumed)
+                    return produced;
+                throw new RuntimeException("The lexer thread failed.", failure);
+            }
+            if (closed)
+                throw new IllegalStateException("The pipeline is closed.");
+            backOff(tries);
+        }
+    }
+
+    @Override
+    public void remove()
+    {
+        // not supported, not going to implement
+    }
+
+    // Stops the lexer thread, tokens not yet consumed are dropped
+    @Override
+    public void close()
+    {
+        closed = true;
+        LockSupport.unpark(lexer);
+    }
+
+    private static void backOff(int tries)
+    {
+        if (tries < SPINS)
+            return;
+        if (tries < 2 * SPINS)
+            Thread.yield();
+        else
+            LockSupport.parkNanos(PARK_NANOS);
+    }
+}
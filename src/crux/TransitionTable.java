@@ -0,0 +1,151 @@
+package crux;
+
+import java.util.Arrays;
+
+/* A deterministic automaton for the lexical grammar of Crux.
+ *
+ * The table is built once from the lexemes of Token.Kind.SPECIAL_CHARS.
+ * Characters are first folded into a small set of character classes, so a
+ * transition is a single lookup into a flat (state x class) array.
+ * Keywords are scanned as identifiers, the Scanner tells them apart with
+ * Token.Kind.lookup() once the lexeme is complete. Whitespace, comments
+ * and numbers are not part of the automaton, the Scanner skips the first
+ * two and decodes the last before entering the start state.
+ */
+final class TransitionTable {
+
+	static final int NONE = -1;
+
+	private static final int ASCII = 128;
+
+	// fixed character classes, the remaining ones are allocated per lexeme character
+	private static final int OTHER = 0;
+	private static final int DIGIT = 1;
+	private static final int LETTER = 2;
+
+	private static final TransitionTable INSTANCE = new TransitionTable();
+
+	static TransitionTable instance()
+	{
+		return INSTANCE;
+	}
+
+	private final int[] classOf = new int[ASCII];
+	private final boolean[] isIdentifierClass;
+	private final int classCount;
+
+	private int[] transitions;
+	private Token.Kind[] accepting;
+	private int stateCount;
+
+	private final int start;
+	private final int identifier;
+
+	private TransitionTable()
+	{
+		// character classes
+		int nextClass = LETTER + 1;
+		for (int c = 0; c < ASCII; c++) {
+			if (Scanner.isDigit(c))
+				classOf[c] = DIGIT;
+			else if (Scanner.isLetter(c) || c == '_')
+				classOf[c] = LETTER;
+			else
+				classOf[c] = OTHER;
+		}
+		for (Token.Kind kind : Token.Kind.SPECIAL_CHARS)
+			nextClass = assignClasses(kind.defaultLexeme(), nextClass);
+		classCount = nextClass;
+
+		isIdentifierClass = new boolean[classCount];
+		for (int c = 0; c < ASCII; c++) {
+			if (Scanner.isIdentifierLexeme(c))
+				isIdentifierClass[classOf[c]] = true;
+		}
+
+		// states
+		transitions = new int[0];
+		accepting = new Token.Kind[0];
+		start = newState(null);
+		identifier = newState(Token.Kind.IDENTIFIER);
+
+		// identifiers, including keywords
+		setTransition(start, LETTER, identifier);
+		for (int cls = 0; cls < classCount; cls++) {
+			if (isIdentifierClass[cls])
+				setTransition(identifier, cls, identifier);
+		}
+
+		// special characters, the prefixes of longer lexemes do not accept
+		for (Token.Kind kind : Token.Kind.SPECIAL_CHARS) {
+			int state = walk(kind.defaultLexeme());
+			accepting[state] = kind;
+		}
+	}
+
+	private int assignClasses(String lexeme, int nextClass)
+	{
+		for (int i = 0; i < lexeme.length(); i++) {
+			char c = lexeme.charAt(i);
+			if (classOf[c] == OTHER)
+				classOf[c] = nextClass++;
+		}
+		return nextClass;
+	}
+
+	private int newState(Token.Kind kind)
+	{
+		int state = stateCount++;
+		transitions = Arrays.copyOf(transitions, stateCount * classCount);
+		Arrays.fill(transitions, state * classCount, stateCount * classCount, NONE);
+		accepting = Arrays.copyOf(accepting, stateCount);
+		accepting[state] = kind;
+		return state;
+	}
+
+	// follows the lexeme from the start state, adding the missing states on the way
+	private int walk(String lexeme)
+	{
+		int state = start;
+		for (int i = 0; i < lexeme.length(); i++) {
+			int cls = classOf[lexeme.charAt(i)];
+			int next = transition(state, cls);
+			if (next == NONE) {
+				next = newState(null);
+				setTransition(state, cls, next);
+			}
+			state = next;
+		}
+		return state;
+	}
+
+	private int transition(int state, int cls)
+	{
+		return transitions[state * classCount + cls];
+	}
+
+	private void setTransition(int state, int cls, int next)
+	{
+		transitions[state * classCount + cls] = next;
+	}
+
+	int start()
+	{
+		return start;
+	}
+
+	// Returns the state reached from the given state on c, or NONE
+	int next(int state, int c)
+	{
+		if (c < 0)
+			return NONE;
+		int cls = c < ASCII ? classOf[c] : OTHER;
+		return transitions[state * classCount + cls];
+	}
+
+	// Returns the kind of token recognized in the given state, or null
+	Token.Kind accepts(int state)
+	{
+		return accepting[state];
+	}
+}
@@ -9,6 +9,8 @@ public class CodeGen implements ast.CommandVisitor {
     private TypeChecker tc;
     private Program program;
     private ActivationRecord currentFunction;
+    // code is generated one step of a node at a time, nesting does not grow the call stack
+    private final Traversal traversal = new Traversal();
 
     public CodeGen(TypeChecker tc)
     {
@@ -38,7 +40,19 @@ public class CodeGen implements ast.CommandVisitor {
     {
         try {
             currentFunction = ActivationRecord.newGlobalFrame();
-            ast.accept(this);
+            traversal.run(ast, this);
+            return !hasError();
+        } catch (CodeGenException e) {
+            return false;
+        }
+    }
+    
+    // the tree must have been checked by the TypeChecker given to this CodeGen
+    public boolean generate(FlatTree ast)
+    {
+        try {
+            currentFunction = ActivationRecord.newGlobalFrame();
+            traversal.run(ast.rootNode(), this);
             return !hasError();
         } catch (CodeGenException e) {
             return false;
@@ -50,24 +64,44 @@ public class CodeGen implements ast.CommandVisitor {
         return program;
     }
 
+    // visits the children in order, one per step, returns false once they are visited
+    private boolean descend(Visitable child)
+    {
+        if (traversal.phase() > 0)
+            return false;
+        traversal.descend(child);
+        return true;
+    }
+
+    private boolean descend(Visitable first, Visitable second)
+    {
+        int phase = traversal.phase();
+        if (phase > 1)
+            return false;
+        traversal.descend(phase == 0 ? first : second);
+        return true;
+    }
+
+    private void checkOperandType(Type operandType)
+    {
+        if (!(operandType instanceof IntType) && !(operandType instanceof FloatType))
+            throw new RuntimeException("Unknown Type");
+    }
+
     @Override
     public void visit(ExpressionList node) {
-        for (Expression expression : node) {
-            expression.accept(this);
-        }
+        traversal.descendNext(node);
     }
 
     @Override
     public void visit(DeclarationList node) {
-        for (Declaration declaration : node) {
-            declaration.accept(this);
-        }
+        traversal.descendNext(node);
     }
 
     @Override
     public void visit(StatementList node) {
-        for (Statement statement : node) {
-            statement.accept(this);
+        if (traversal.phase() > 0) {
+            Visitable statement = traversal.finished();
 
             // pop the stack if there is a non-void call
             if (statement instanceof Call) {
@@ -78,6 +112,7 @@ public class CodeGen implements ast.CommandVisitor {
                 }
             }
         }
+        traversal.descendNext(node);
     }
 
     @Override
@@ -95,13 +130,13 @@ public class CodeGen implements ast.CommandVisitor {
 
     @Override
     public void visit(LiteralFloat node) {
-        getProgram().appendInstruction("li.s $f0, " + node.value().toString());
+        getProgram().appendInstruction("li.s $f0, " + node.value());
         getProgram().pushFloat("$f0");
     }
 
     @Override
     public void visit(LiteralInt node) {
-        getProgram().appendInstruction("li $t0, " + node.value().toString());
+        getProgram().appendInstruction("li $t0, " + node.value());
         getProgram().pushInt("$t0");
     }
 
@@ -117,14 +152,18 @@ public class CodeGen implements ast.CommandVisitor {
 
     @Override
     public void visit(FunctionDefinition node) {
-        String functionLabel = "func." + node.function().name() + ":";
-        if (node.function().name().equals("main"))
-            functionLabel = "" + node.function().name() + ":";
-        int labelPosition = getProgram().appendInstruction(functionLabel);
-
-        // set the new scope
-        currentFunction = new ActivationRecord(node, currentFunction);
-        node.body().accept(this);
+        if (traversal.phase() == 0) {
+            String functionLabel = "func." + node.function().name() + ":";
+            if (node.function().name().equals("main"))
+                functionLabel = "" + node.function().name() + ":";
+            traversal.setState(getProgram().appendInstruction(functionLabel));
+
+            // set the new scope
+            currentFunction = new ActivationRecord(node, currentFunction);
+            traversal.descend(node.body());
+            return;
+        }
+        int labelPosition = (Integer) traversal.state();
 
         // insert before the body with the size of local vars
         int localVarsSize = currentFunction.stackSize();
@@ -140,95 +179,84 @@ public class CodeGen implements ast.CommandVisitor {
 
     @Override
     public void visit(Addition node) {
-        if (tc.getType(node) instanceof IntType) {
-            node.leftSide().accept(this);
-            node.rightSide().accept(this);
+        Type operandType = tc.getType(node);
+        checkOperandType(operandType);
+        if (descend(node.leftSide(), node.rightSide()))
+            return;
+        if (operandType instanceof IntType) {
             getProgram().popInt("$t2");
             getProgram().popInt("$t1");
             getProgram().appendInstruction("add $t1, $t1, $t2");
             getProgram().pushInt("$t1");
-        } else if (tc.getType(node) instanceof FloatType) {
-            node.leftSide().accept(this);
-            node.rightSide().accept(this);
+        } else {
             getProgram().popFloat("$f2");
             getProgram().popFloat("$f1");
             getProgram().appendInstruction("add.s $f1, $f1, $f2");
             getProgram().pushFloat("$f1");
-        } else {
-            throw new RuntimeException("Unknown Type");
         }
     }
 
     @Override
     public void visit(Subtraction node) {
         Type operandType = tc.getType(node);
+        checkOperandType(operandType);
+        if (descend(node.leftSide(), node.rightSide()))
+            return;
         if (operandType instanceof IntType) {
-            node.leftSide().accept(this);
-            node.rightSide().accept(this);
             getProgram().popInt("$t2");
             getProgram().popInt("$t1");
             getProgram().appendInstruction("sub $t1, $t1, $t2");
             getProgram().pushInt("$t1");
-        } else if (operandType instanceof FloatType) {
-            node.leftSide().accept(this);
-            node.rightSide().accept(this);
+        } else {
             getProgram().popFloat("$f2");
             getProgram().popFloat("$f1");
             getProgram().appendInstruction("sub.s $f1, $f1, $f2");
             getProgram().pushFloat("$f1");
-        } else {
-            throw new RuntimeException("Unknown Type");
         }
     }
 
     @Override
     public void visit(Multiplication node) {
         Type operandType = tc.getType(node);
+        checkOperandType(operandType);
+        if (descend(node.leftSide(), node.rightSide()))
+            return;
         if (operandType instanceof IntType) {
-            node.leftSide().accept(this);
-            node.rightSide().accept(this);
             getProgram().popInt("$t2");
             getProgram().popInt("$t1");
             getProgram().appendInstruction("mul $t2, $t1, $t2");
             getProgram().pushInt("$t2");
-        } else if (operandType instanceof FloatType) {
-            node.leftSide().accept(this);
-            node.rightSide().accept(this);
+        } else {
             getProgram().popFloat("$f2");
             getProgram().popFloat("$f1");
             getProgram().appendInstruction("mul.s $f1, $f1, $f2");
             getProgram().pushFloat("$f1");
-        } else {
-            throw new RuntimeException("Unknown Type");
         }
     }
 
     @Override
     public void visit(Division node) {
         Type operandType = tc.getType(node);
+        checkOperandType(operandType);
+        if (descend(node.leftSide(), node.rightSide()))
+            return;
         if (operandType instanceof IntType) {
-            node.leftSide().accept(this);
-            node.rightSide().accept(this);
             getProgram().popInt("$t2");
             getProgram().popInt("$t1");
             getProgram().appendInstruction("div $t1, $t1, $t2");
             getProgram().pushInt("$t1");
-        } else if (operandType instanceof FloatType) {
-            node.leftSide().accept(this);
-            node.rightSide().accept(this);
+        } else {
             getProgram().popFloat("$f2");
             getProgram().popFloat("$f1");
             getProgram().appendInstruction("div.s $f1, $f1, $f2");
             getProgram().pushFloat("$f1");
-        } else {
-            throw new RuntimeException("Unknown Type");
         }
     }
 
     @Override
     public void visit(LogicalAnd node) {
-        node.leftSide().accept(this);
-        node.rightSide().accept(this);
+        if (descend(node.leftSide(), node.rightSide()))
+            return;
         getProgram().popBool("$t3");
         getProgram().popBool("$t2");
 
@@ -239,8 +267,8 @@ public class CodeGen implements ast.CommandVisitor {
     @Override
     public void visit(LogicalOr node) {
         // fixme: not test
-        node.leftSide().accept(this);
-        node.rightSide().accept(this);
+        if (descend(node.leftSide(), node.rightSide()))
+            return;
         getProgram().popBool("$t3");
         getProgram().popBool("$t2");
 
@@ -251,7 +279,8 @@ public class CodeGen implements ast.CommandVisitor {
     @Override
     public void visit(LogicalNot node) {
         // fixme: not test
-        node.expression().accept(this);
+        if (descend(node.expression()))
+            return;
         getProgram().popBool("$t2");
 
         String trueLabel = getProgram().newLabel();
@@ -270,9 +299,16 @@ public class CodeGen implements ast.CommandVisitor {
 
     @Override
     public void visit(Comparison node) {
-        String trueLabel = getProgram().newLabel();
-        String joinLabel = getProgram().newLabel();
         Type operandType = tc.getType((Command) node.leftSide());
+        if (traversal.phase() == 0) {
+            // the labels are numbered before the operands'
+            traversal.setState(new String[] { getProgram().newLabel(), getProgram().newLabel() });
+            checkOperandType(operandType);
+        }
+        if (descend(node.leftSide(), node.rightSide()))
+            return;
+        String trueLabel = ((String[]) traversal.state())[0];
+        String joinLabel = ((String[]) traversal.state())[1];
 
         if (operandType instanceof IntType) {
             String branchInstruction = null;
@@ -299,8 +335,6 @@ public class CodeGen implements ast.CommandVisitor {
                     throw new RuntimeException("Unknown Operation");
             }
 
-            node.leftSide().accept(this);
-            node.rightSide().accept(this);
             getProgram().popInt("$t3");
             getProgram().popInt("$t2");
 
@@ -314,9 +348,7 @@ public class CodeGen implements ast.CommandVisitor {
             getProgram().appendInstruction("jal " + joinLabel);
             getProgram().appendInstruction(trueLabel + ":");
             getProgram().appendInstruction("li $t0, 1");
-        } else if (operandType instanceof FloatType) {
-            node.leftSide().accept(this);
-            node.rightSide().accept(this);
+        } else {
             getProgram().popFloat("$f3");
             getProgram().popFloat("$f2");
 
@@ -339,8 +371,6 @@ public class CodeGen implements ast.CommandVisitor {
                 getProgram().appendInstruction(trueLabel + ":");
                 getProgram().appendInstruction("li $t0, 1");
             }
-        } else {
-            throw new RuntimeException("Unknown Type");
         }
         getProgram().appendInstruction(joinLabel + ":");
         getProgram().pushBool("$t0");
@@ -348,7 +378,8 @@ public class CodeGen implements ast.CommandVisitor {
 
     @Override
     public void visit(Dereference node) {
-        node.expression().accept(this);
+        if (descend(node.expression()))
+            return;
         getProgram().popAddress("$t0");
         getProgram().appendInstruction("lw $t2, 0($t0)");
         // fixme: only support int
@@ -362,13 +393,11 @@ public class CodeGen implements ast.CommandVisitor {
         // push the address and amount on the stack
         // structure: (-) amountN ... amount1 address (+)
 
-        node.amount().accept(this);
+        if (descend(node.amount(), node.base()))
+            return;
 
-        if (node.base() instanceof Index) {
-            // push the index for multi-dimensional array
-            node.base().accept(this);
-        } else {
-            node.base().accept(this); // address
+        // a multi-dimensional base has pushed its index and address
+        if (!(node.base() instanceof Index)) {
             getProgram().popAddress("$t0"); // address
             getProgram().popInt("$t3"); // index
 
@@ -397,31 +426,35 @@ public class CodeGen implements ast.CommandVisitor {
 
     @Override
     public void visit(Assignment node) {
-        node.source().accept(this); // data on stack
+        if (traversal.phase() == 0) {
+            traversal.descend(node.source()); // data on stack
+            return;
+        }
         Type sourceType = tc.getType((Command) node.source());
+        if (!(sourceType instanceof IntType) && !(sourceType instanceof FloatType) && !(sourceType instanceof BoolType))
+            throw new CodeGenException("Unknown type in assignment: " + sourceType.toString());
+        if (traversal.phase() == 1) {
+            traversal.descend(node.destination()); // address on stack
+            return;
+        }
+
+        getProgram().popAddress("$t0");
         if (sourceType instanceof IntType) {
-            node.destination().accept(this); // address on stack
-            getProgram().popAddress("$t0");
             getProgram().popInt("$t2");
             getProgram().appendInstruction("sw $t2, 0($t0)");
         } else if (sourceType instanceof FloatType) {
-            node.destination().accept(this); // address on stack
-            getProgram().popAddress("$t0");
             getProgram().popFloat("$f1");
             getProgram().appendInstruction("swc1 $f1, 0($t0)");
-        } else if (sourceType instanceof BoolType) {
-            node.destination().accept(this); // address on stack
-            getProgram().popAddress("$t0");
+        } else {
             getProgram().popBool("$t2");
             getProgram().appendInstruction("sw $t2, 0($t0)");
-        } else {
-            throw new CodeGenException("Unknown type in assignment: " + sourceType.toString());
         }
     }
 
     @Override
     public void visit(Call node) {
-        node.arguments().accept(this);
+        if (descend(node.arguments()))
+            return;
 
         getProgram().appendInstruction("jal func." + node.function().name());
 
@@ -435,47 +468,70 @@ public class CodeGen implements ast.CommandVisitor {
 
     @Override
     public void visit(IfElseBranch node) {
-        node.condition().accept(this);
-        // save the condition
-        getProgram().popBool("$t1");
-        String endLabel =  getProgram().newLabel();
-        String elseLabel =  getProgram().newLabel();
-
-        // jump to elseBlock if (condition == 0)
-        getProgram().appendInstruction("beqz $t1, " + elseLabel);
-
-        // thenBlock
-        node.thenBlock().accept(this);
-        getProgram().appendInstruction("jal " + endLabel);
-
-        // elseBlock
-        getProgram().appendInstruction(elseLabel + ":");
-        if (node.elseBlock() != null) {
-            node.elseBlock().accept(this);
+        switch (traversal.phase()) {
+            case 0:
+                traversal.descend(node.condition());
+                return;
+            case 1: {
+                // save the condition
+                getProgram().popBool("$t1");
+                String endLabel =  getProgram().newLabel();
+                String elseLabel =  getProgram().newLabel();
+                traversal.setState(new String[] { endLabel, elseLabel });
+
+                // jump to elseBlock if (condition == 0)
+                getProgram().appendInstruction("beqz $t1, " + elseLabel);
+
+                // thenBlock
+                traversal.descend(node.thenBlock());
+                return;
+            }
+            case 2: {
+                String[] labels = (String[]) traversal.state();
+                getProgram().appendInstruction("jal " + labels[0]);
+
+                // elseBlock
+                getProgram().appendInstruction(labels[1] + ":");
+                if (node.elseBlock() != null) {
+                    traversal.descend(node.elseBlock());
+                    return;
+                }
+                break;
+            }
         }
 
-        getProgram().appendInstruction(endLabel + ":");
+        getProgram().appendInstruction(((String[]) traversal.state())[0] + ":");
     }
 
     @Override
     public void visit(WhileLoop node) {
-        String beforeLabel = getProgram().newLabel();
-        String afterLabel = getProgram().newLabel();
-
-        getProgram().appendInstruction(beforeLabel + ":");
-        node.condition().accept(this);
-        getProgram().popBool("$t2");
-        getProgram().appendInstruction("bne $t2, 1, " + afterLabel);
-        node.body().accept(this);
-        getProgram().appendInstruction("jal " + beforeLabel);
-        getProgram().appendInstruction(afterLabel + ":");
+        switch (traversal.phase()) {
+            case 0: {
+                String beforeLabel = getProgram().newLabel();
+                String afterLabel = getProgram().newLabel();
+                traversal.setState(new String[] { beforeLabel, afterLabel });
+
+                getProgram().appendInstruction(beforeLabel + ":");
+                traversal.descend(node.condition());
+                return;
+            }
+            case 1:
+                getProgram().popBool("$t2");
+                getProgram().appendInstruction("bne $t2, 1, " + ((String[]) traversal.state())[1]);
+                traversal.descend(node.body());
+                return;
+        }
 
+        String[] labels = (String[]) traversal.state();
+        getProgram().appendInstruction("jal " + labels[0]);
+        getProgram().appendInstruction(labels[1] + ":");
     }
 
     @Override
     public void visit(Return node) {
         // push the value to $v0
-        node.argument().accept(this); // assume the data is on the stack
+        if (descend(node.argument())) // assume the data is on the stack
+            return;
         getProgram().popInt("$v0");
         getProgram().appendEpilogue(currentFunction.stackSize());
     }
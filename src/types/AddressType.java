@@ -2,9 +2,14 @@ package types;
 
 public class AddressType extends Type {
     
-    private Type base;
+    public static AddressType of(Type base)
+    {
+        return TypeInterner.address(base);
+    }
+
+    private final Type base;
     
-    public AddressType(Type base)
+    AddressType(Type base)
     {
         this.base = base;
     }
@@ -29,18 +34,7 @@ public class AddressType extends Type {
     @Override
     public Type assign(Type source) {
         if (source.equivalent(base))
-            return new VoidType();
+            return VoidType.INSTANCE;
         return super.assign(source);
     }
-
-    @Override
-    public boolean equivalent(Type that) {
-        if (that == null)
-            return false;
-        if (!(that instanceof AddressType))
-            return false;
-        
-        AddressType aType = (AddressType)that;
-        return this.base.equivalent(aType.base);
-    }
 }
@@ -2,10 +2,15 @@ package types;
 
 public class ArrayType extends Type {
     
-    private Type base;
-    private int extent;
+    public static ArrayType of(int extent, Type base)
+    {
+        return TypeInterner.array(extent, base);
+    }
+
+    private final Type base;
+    private final int extent;
     
-    public ArrayType(int extent, Type base)
+    ArrayType(int extent, Type base)
     {
         this.extent = extent;
         this.base = base;
@@ -50,16 +55,4 @@ public class ArrayType extends Type {
     {
         return "array[" + extent + "," + base + "]";
     }
-    
-    @Override
-    public boolean equivalent(Type that)
-    {
-        if (that == null)
-            return false;
-        if (!(that instanceof IntType))
-            return false;
-        
-        ArrayType aType = (ArrayType)that;
-        return this.extent() == aType.extent && base.equivalent(aType.base);
-    }
 }
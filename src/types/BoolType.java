@@ -2,7 +2,9 @@ package types;
 
 public class BoolType extends Type {
     
-    public BoolType()
+    public static final BoolType INSTANCE = new BoolType();
+
+    private BoolType()
     {
 
     }
@@ -12,7 +14,7 @@ public class BoolType extends Type {
     {
         if(!(that instanceof BoolType))
             return super.and(that);
-        return new BoolType();
+        return BoolType.INSTANCE;
     }
 
     @Override
@@ -20,18 +22,18 @@ public class BoolType extends Type {
     {
         if(!(that instanceof BoolType))
             return super.or(that);
-        return new BoolType();
+        return BoolType.INSTANCE;
     }
 
     @Override
     public Type not()
     {
-        return new BoolType();
+        return BoolType.INSTANCE;
     }
 
     @Override
     public Type deref() {
-        return new AddressType(this);
+        return AddressType.of(this);
     }
 
     @Override
@@ -39,15 +41,4 @@ public class BoolType extends Type {
     {
         return "bool";
     }
-
-    @Override
-    public boolean equivalent(Type that)
-    {
-        if (that == null)
-            return false;
-        if (!(that instanceof BoolType))
-            return false;
-        
-        return true;
-    }
 }    
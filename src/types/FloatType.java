@@ -2,7 +2,9 @@ package types;
 
 public class FloatType extends Type {
     
-    public FloatType() { }
+    public static final FloatType INSTANCE = new FloatType();
+
+    private FloatType() { }
     
     @Override
     public String toString()
@@ -14,49 +16,39 @@ public class FloatType extends Type {
     public Type add(Type that) {
         if (!(that instanceof FloatType))
             return super.add(that);
-        return new FloatType();
+        return FloatType.INSTANCE;
     }
 
     @Override
     public Type sub(Type that) {
         if (!(that instanceof FloatType))
             return super.sub(that);
-        return new FloatType();
+        return FloatType.INSTANCE;
     }
 
     @Override
     public Type mul(Type that) {
         if (!(that instanceof FloatType))
             return super.mul(that);
-        return new FloatType();
+        return FloatType.INSTANCE;
     }
 
     @Override
     public Type div(Type that) {
         if (!(that instanceof FloatType))
             return super.div(that);
-        return new FloatType();
+        return FloatType.INSTANCE;
     }
 
     @Override
     public Type compare(Type that) {
         if (!(that instanceof FloatType))
             return super.compare(that);
-        return new BoolType();
+        return BoolType.INSTANCE;
     }
 
     @Override
     public Type deref() {
-        return new AddressType(this);
-    }
-
-    @Override
-    public boolean equivalent(Type that)
-    {
-        if (that == null)
-            return false;
-        if (!(that instanceof FloatType))
-            return false;
-        return true;
+        return AddressType.of(this);
     }
 }
@@ -3,30 +3,31 @@ package types;
 public class FuncType extends Type {
 
     public static FuncType predefinedFunc(String name) {
-        TypeList arguments = new TypeList();
         if (name.equals("readInt")) {
-            return new FuncType(arguments, new IntType());
+            return of(TypeList.of(), IntType.INSTANCE);
         } else if (name.equals("readFloat")) {
-            return new FuncType(arguments, new FloatType());
+            return of(TypeList.of(), FloatType.INSTANCE);
         } else if (name.equals("printBool")) {
-            arguments.append(new BoolType());
-            return new FuncType(arguments, new VoidType());
+            return of(TypeList.of(BoolType.INSTANCE), VoidType.INSTANCE);
         } else if (name.equals("printInt")) {
-            arguments.append(new IntType());
-            return new FuncType(arguments, new VoidType());
+            return of(TypeList.of(IntType.INSTANCE), VoidType.INSTANCE);
         } else if (name.equals("printFloat")) {
-            arguments.append(new FloatType());
-            return new FuncType(arguments, new VoidType());
+            return of(TypeList.of(FloatType.INSTANCE), VoidType.INSTANCE);
         } else if (name.equals("println")) {
-            return new FuncType(arguments, new VoidType());
+            return of(TypeList.of(), VoidType.INSTANCE);
         }
         return null;
     }
 
-    private TypeList args;
-    private Type ret;
+    public static FuncType of(TypeList args, Type returnType)
+    {
+        return TypeInterner.func(args, returnType);
+    }
 
-    public FuncType(TypeList args, Type returnType)
+    private final TypeList args;
+    private final Type ret;
+
+    FuncType(TypeList args, Type returnType)
     {
         this.args = args;
         this.ret = returnType;
@@ -57,16 +58,4 @@ public class FuncType extends Type {
     {
         return "func(" + args + "):" + ret;
     }
-
-    @Override
-    public boolean equivalent(Type that)
-    {
-        if (that == null)
-            return false;
-        if (!(that instanceof FuncType))
-            return false;
-
-        FuncType aType = (FuncType)that;
-        return this.ret.equivalent(aType.ret) && this.args.equivalent(aType.args);
-    }
 }
@@ -2,7 +2,9 @@ package types;
 
 public class IntType extends Type {
 
-    public IntType() {
+    public static final IntType INSTANCE = new IntType();
+
+    private IntType() {
     }
 
     @Override
@@ -14,48 +16,39 @@ public class IntType extends Type {
     public Type add(Type that) {
         if (!(that instanceof IntType))
             return super.add(that);
-        return new IntType();
+        return IntType.INSTANCE;
     }
 
     @Override
     public Type sub(Type that) {
         if (!(that instanceof IntType))
             return super.sub(that);
-        return new IntType();
+        return IntType.INSTANCE;
     }
 
     @Override
     public Type mul(Type that) {
         if (!(that instanceof IntType))
             return super.mul(that);
-        return new IntType();
+        return IntType.INSTANCE;
     }
 
     @Override
     public Type div(Type that) {
         if (!(that instanceof IntType))
             return super.div(that);
-        return new IntType();
+        return IntType.INSTANCE;
     }
 
     @Override
     public Type compare(Type that) {
         if (!(that instanceof IntType))
             return super.compare(that);
-        return new BoolType();
+        return BoolType.INSTANCE;
     }
 
     @Override
     public Type deref() {
-        return new AddressType(this);
-    }
-
-    @Override
-    public boolean equivalent(Type that) {
-        if (that == null)
-            return false;
-        if (!(that instanceof IntType))
-            return false;
-        return true;
+        return AddressType.of(this);
     }
 }
@@ -1,13 +1,18 @@
 package types;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 public abstract class Type {
     
     public static Type getBaseType(String typeStr)
     {
-        if (typeStr.equals("int")) return new IntType();
-        if (typeStr.equals("float")) return new FloatType();
-        if (typeStr.equals("bool")) return new BoolType();
-        if (typeStr.equals("void")) return new VoidType();
+        if (typeStr.equals("int")) return IntType.INSTANCE;
+        if (typeStr.equals("float")) return FloatType.INSTANCE;
+        if (typeStr.equals("bool")) return BoolType.INSTANCE;
+        if (typeStr.equals("void")) return VoidType.INSTANCE;
         return new ErrorType("Unkown type: " + typeStr);
     }
     
@@ -71,6 +76,104 @@ public abstract class Type {
         return new ErrorType("Cannot assign " + source + " to " + this + ".");
     }
     
-    // Perform a structural equivalence test
-    abstract public boolean equivalent(Type that);
+    // Perform a structural equivalence test, types other than ErrorType are interned
+    public boolean equivalent(Type that)
+    {
+        return this == that;
+    }
+
+// Binary Image ====================================
+    // how each kind of type is tagged in the image of an ast.FlatTree
+    private static final byte INT = 0, FLOAT = 1, BOOL = 2, VOID = 3, ERROR = 4,
+            ADDRESS = 5, ARRAY = 6, FUNC = 7, LIST = 8;
+    // deeper than any type a program declares, and shallow enough for read() to recurse
+    private static final int MAX_DEPTH = 1024;
+
+    public static void write(Type type, DataOutputStream out) throws IOException
+    {
+        if (type instanceof IntType) {
+            out.writeByte(INT);
+        } else if (type instanceof FloatType) {
+            out.writeByte(FLOAT);
+        } else if (type instanceof BoolType) {
+            out.writeByte(BOOL);
+        } else if (type instanceof VoidType) {
+            out.writeByte(VOID);
+        } else if (type instanceof ErrorType) {
+            out.writeByte(ERROR);
+            byte[] message = ((ErrorType) type).getMessage().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(message.length);
+            out.write(message);
+        } else if (type instanceof AddressType) {
+            out.writeByte(ADDRESS);
+            write(((AddressType) type).base(), out);
+        } else if (type instanceof ArrayType) {
+            out.writeByte(ARRAY);
+            out.writeInt(((ArrayType) type).extent());
+            write(((ArrayType) type).base(), out);
+        } else if (type instanceof FuncType) {
+            out.writeByte(FUNC);
+            write(((FuncType) type).arguments(), out);
+            write(((FuncType) type).returnType(), out);
+        } else if (type instanceof TypeList) {
+            out.writeByte(LIST);
+            out.writeInt(((TypeList) type).size());
+            for (Type item : (TypeList) type)
+                write(item, out);
+        } else {
+            throw new IllegalArgumentException("No image for type " + type + ".");
+        }
+    }
+
+    // Throws IllegalArgumentException, or BufferUnderflowException, on an image write() cannot have made
+    public static Type read(ByteBuffer in)
+    {
+        return read(in, 0);
+    }
+
+    private static Type read(ByteBuffer in, int depth)
+    {
+        if (depth > MAX_DEPTH)
+            throw new IllegalArgumentException("A type is nested more than " + MAX_DEPTH + " deep.");
+        byte tag = in.get();
+        switch (tag) {
+            case INT: return IntType.INSTANCE;
+            case FLOAT: return FloatType.INSTANCE;
+            case BOOL: return BoolType.INSTANCE;
+            case VOID: return VoidType.INSTANCE;
+            case ERROR: {
+                byte[] message = new byte[readCount(in, 1)];
+                in.get(message);
+                return new ErrorType(new String(message, StandardCharsets.UTF_8));
+            }
+            case ADDRESS: return AddressType.of(read(in, depth + 1));
+            case ARRAY: {
+                int extent = in.getInt();
+                return ArrayType.of(extent, read(in, depth + 1));
+            }
+            case FUNC: {
+                Type arguments = read(in, depth + 1);
+                if (!(arguments instanceof TypeList))
+                    throw new IllegalArgumentException("The arguments of a function are " + arguments + ".");
+                return FuncType.of((TypeList) arguments, read(in, depth + 1));
+            }
+            case LIST: {
+                Type[] items = new Type[readCount(in, 1)];
+                for (int i = 0; i < items.length; i++)
+                    items[i] = read(in, depth + 1);
+                return TypeList.of(items);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown type tag " + tag + ".");
+        }
+    }
+
+    // a count of items of at least itemSize bytes each, that the rest of the buffer can hold
+    private static int readCount(ByteBuffer in, int itemSize)
+    {
+        int count = in.getInt();
+        if (count < 0 || (long) count * itemSize > in.remaining())
+            throw new IllegalArgumentException("The count " + count + " runs past the end of the image.");
+        return count;
+    }
 }
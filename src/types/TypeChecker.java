@@ -1,15 +1,22 @@
 package types;
 
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import ast.*;
+import crux.LineMap;
 import crux.Symbol;
 
 public class TypeChecker implements CommandVisitor {
     
     private HashMap<Command, Type> typeMap;
+    // types of the nodes of a FlatTree, and of the nodes materialized from it, by node id
+    private Type[] typesById = new Type[0];
     private StringBuffer errorBuffer;
     private Symbol currentFunction;
+    private LineMap lineMap;
+    // nodes are checked one step at a time, nesting does not grow the call stack
+    private final Traversal traversal = new Traversal();
 
     /* Useful error strings:
      *
@@ -35,8 +42,20 @@ public class TypeChecker implements CommandVisitor {
         errorBuffer = new StringBuffer();
     }
 
+    // for trees parsed without positions, their offsets are resolved in lineMap
+    public TypeChecker(LineMap lineMap)
+    {
+        this();
+        this.lineMap = lineMap;
+    }
+
     private void reportError(int lineNum, int charPos, String message)
     {
+        if (lineNum == Command.OFFSET_ONLY && lineMap != null) {
+            int offset = charPos;
+            lineNum = lineMap.lineNumber(offset);
+            charPos = lineMap.charPosition(offset);
+        }
         errorBuffer.append("TypeError(" + lineNum + "," + charPos + ")");
         errorBuffer.append("[" + message + "]" + "\n");
     }
@@ -46,17 +65,55 @@ public class TypeChecker implements CommandVisitor {
         if (type instanceof ErrorType) {
             reportError(node.lineNumber(), node.charPosition(), ((ErrorType)type).getMessage());
         }
-        typeMap.put(node, type);
+        store(node, type);
+    }
+
+    private void store(Command node, Type type)
+    {
+        int id = node.nodeId();
+        if (id == Command.NO_ID) {
+            typeMap.put(node, type);
+            return;
+        }
+        if (id >= typesById.length)
+            typesById = Arrays.copyOf(typesById, Math.max(id + 1, typesById.length * 2));
+        typesById[id] = type;
     }
 
     public Type getType(Command node)
     {
-        return typeMap.get(node);
+        int id = node.nodeId();
+        if (id == Command.NO_ID)
+            return typeMap.get(node);
+        return id < typesById.length ? typesById[id] : null;
     }
     
     public boolean check(Command ast)
     {
-        ast.accept(this);
+        traversal.run(ast, this);
+        return !hasError();
+    }
+
+    // checks the arrays of the tree, a node at a time, with the errors and the order of check(Command)
+    public boolean check(FlatTree ast)
+    {
+        if (typesById.length < ast.size())
+            typesById = Arrays.copyOf(typesById, ast.size());
+        int[] stack = new int[64];
+        int depth = 0;
+        stack[depth++] = ast.root();
+        int finished = FlatTree.NONE;
+        while (depth > 0) {
+            int child = check(ast, stack[depth - 1], finished);
+            if (child == FlatTree.NONE) {
+                finished = stack[--depth];
+            } else {
+                if (depth == stack.length)
+                    stack = Arrays.copyOf(stack, depth * 2);
+                stack[depth++] = child;
+                finished = FlatTree.NONE;
+            }
+        }
         return !hasError();
     }
     
@@ -70,38 +127,55 @@ public class TypeChecker implements CommandVisitor {
         return errorBuffer.toString();
     }
 
+    // checks the children in order, one per step, returns false once they are checked
+    private boolean descend(Object child)
+    {
+        if (traversal.phase() > 0)
+            return false;
+        traversal.descend((Command) child);
+        return true;
+    }
+
+    private boolean descend(Object first, Object second)
+    {
+        int phase = traversal.phase();
+        if (phase > 1)
+            return false;
+        traversal.descend((Command) (phase == 0 ? first : second));
+        return true;
+    }
+
+    private Type finishedType()
+    {
+        return getType((Command) traversal.finished());
+    }
+
     @Override
     public void visit(ExpressionList node) {
-        TypeList typeList = new TypeList();
-        for (Expression expression : node) {
-            Command command = (Command) expression;
-            check(command);
-            typeList.append(getType(command));
-        }
-        put(node, typeList);
+        if (traversal.descendNext(node))
+            return;
+        Type[] types = new Type[node.size()];
+        int i = 0;
+        for (Expression expression : node)
+            types[i++] = getType((Command) expression);
+        put(node, TypeList.of(types));
     }
 
     @Override
     public void visit(DeclarationList node) {
-        for (Declaration declaration : node)
-            check((Command) declaration);
+        traversal.descendNext(node);
     }
 
     @Override
     public void visit(StatementList node) {
-        Type returnType = new VoidType();
-
-        for (Statement statement : node) {
-            Command command = (Command) statement;
-            check(command);
-            Type type = getType(command);
-
-            if (!(type instanceof VoidType)) {
-                returnType = getType(command);
-            }
+        if (traversal.phase() == 0) {
+            store(node, VoidType.INSTANCE);
+        } else {
+            Type type = finishedType();
+            if (!(type instanceof VoidType))
+                store(node, type);
         }
-
-        typeMap.put(node, returnType);
+        traversal.descendNext(node);
     }
 
     @Override
@@ -111,17 +185,17 @@ public class TypeChecker implements CommandVisitor {
 
     @Override
     public void visit(LiteralBool node) {
-        put(node, new BoolType());
+        put(node, BoolType.INSTANCE);
     }
 
     @Override
     public void visit(LiteralFloat node) {
-        put(node, new FloatType());
+        put(node, FloatType.INSTANCE);
     }
 
     @Override
     public void visit(LiteralInt node) {
-        put(node, new IntType());
+        put(node, IntType.INSTANCE);
     }
 
     @Override
@@ -131,7 +205,7 @@ public class TypeChecker implements CommandVisitor {
             put(node, new ErrorType("Variable " + node.symbol().name() +
                     " has invalid type " + type + "."));
         else
-            put(node, new VoidType());
+            put(node, VoidType.INSTANCE);
     }
 
     @Override
@@ -147,13 +221,15 @@ public class TypeChecker implements CommandVisitor {
 
     @Override
     public void visit(FunctionDefinition node) {
-        currentFunction = node.function();
-        Type expectedReturnType = ((FuncType) currentFunction.type()).returnType();
-
-        if (node.function().name().equals("main") &&
-                !(expectedReturnType instanceof VoidType)) {
-            put(node, new ErrorType("Function main has invalid signature."));
-        } else {
+        if (traversal.phase() == 0) {
+            currentFunction = node.function();
+            Type expectedReturnType = ((FuncType) currentFunction.type()).returnType();
+
+            if (node.function().name().equals("main") &&
+                    !(expectedReturnType instanceof VoidType)) {
+                put(node, new ErrorType("Function main has invalid signature."));
+                return;
+            }
             for (int i = 0; i < node.arguments().size(); i++) {
                 Type type = node.arguments().get(i).type();
                 if (type instanceof VoidType) {
@@ -170,24 +246,26 @@ public class TypeChecker implements CommandVisitor {
             }
 
             //explore the functions
-            check(node.body());
-
-            Type actualReturnType = getType(node.body());
-            if (!(expectedReturnType instanceof VoidType) && actualReturnType instanceof VoidType) {
-                put(node, new ErrorType("Not all paths in function " +
-                        currentFunction.name() + " have a return."));
-            }
+            traversal.descend(node.body());
+            return;
+        }
 
-            typeMap.put(node, actualReturnType);
+        Type expectedReturnType = ((FuncType) currentFunction.type()).returnType();
+        Type actualReturnType = getType(node.body());
+        if (!(expectedReturnType instanceof VoidType) && actualReturnType instanceof VoidType) {
+            put(node, new ErrorType("Not all paths in function " +
+                    currentFunction.name() + " have a return."));
         }
+
+        store(node, actualReturnType);
     }
 
     @Override
     public void visit(Comparison node) {
         Command leftSide = (Command) node.leftSide();
         Command rightSide = (Command) node.rightSide();
-        check(leftSide);
-        check(rightSide);
+        if (descend(leftSide, rightSide))
+            return;
         put(node, getType(leftSide).compare(getType(rightSide)));
     }
     
@@ -195,8 +273,8 @@ public class TypeChecker implements CommandVisitor {
     public void visit(Addition node) {
         Command leftSide = (Command) node.leftSide();
         Command rightSide = (Command) node.rightSide();
-        check(leftSide);
-        check(rightSide);
+        if (descend(leftSide, rightSide))
+            return;
         put(node, getType(leftSide).add(getType(rightSide)));
     }
     
@@ -204,8 +282,8 @@ public class TypeChecker implements CommandVisitor {
     public void visit(Subtraction node) {
         Command leftSide = (Command) node.leftSide();
         Command rightSide = (Command) node.rightSide();
-        check(leftSide);
-        check(rightSide);
+        if (descend(leftSide, rightSide))
+            return;
         put(node, getType(leftSide).sub(getType(rightSide)));
     }
     
@@ -213,8 +291,8 @@ public class TypeChecker implements CommandVisitor {
     public void visit(Multiplication node) {
         Command leftSide = (Command) node.leftSide();
         Command rightSide = (Command) node.rightSide();
-        check(leftSide);
-        check(rightSide);
+        if (descend(leftSide, rightSide))
+            return;
         put(node, getType(leftSide).mul(getType(rightSide)));
     }
     
@@ -222,8 +300,8 @@ public class TypeChecker implements CommandVisitor {
     public void visit(Division node) {
         Command leftSide = (Command) node.leftSide();
         Command rightSide = (Command) node.rightSide();
-        check(leftSide);
-        check(rightSide);
+        if (descend(leftSide, rightSide))
+            return;
         put(node, getType(leftSide).div(getType(rightSide)));
     }
     
@@ -231,8 +309,8 @@ public class TypeChecker implements CommandVisitor {
     public void visit(LogicalAnd node) {
         Command leftSide = (Command) node.leftSide();
         Command rightSide = (Command) node.rightSide();
-        check(leftSide);
-        check(rightSide);
+        if (descend(leftSide, rightSide))
+            return;
         put(node, getType(leftSide).and(getType(rightSide)));
     }
 
@@ -240,21 +318,23 @@ public class TypeChecker implements CommandVisitor {
     public void visit(LogicalOr node) {
         Command leftSide = (Command) node.leftSide();
         Command rightSide = (Command) node.rightSide();
-        check(leftSide);
-        check(rightSide);
+        if (descend(leftSide, rightSide))
+            return;
         put(node, getType(leftSide).or(getType(rightSide)));
     }
 
     @Override
     public void visit(LogicalNot node) {
         Command command = (Command) node.expression();
-        check(command);
+        if (descend(command))
+            return;
         put(node, getType(command).not());
     }
     
     @Override
     public void visit(Dereference node) {
-        check((Command) node.expression());
+        if (descend(node.expression()))
+            return;
         Type derefType = getType((Command) node.expression());
         put(node, derefType.deref());
     }
@@ -263,8 +343,8 @@ public class TypeChecker implements CommandVisitor {
     public void visit(Index node) {
         Command base = (Command) node.base();
         Command amount = (Command) node.amount();
-        check(base);
-        check(amount);
+        if (descend(base, amount))
+            return;
         Type baseType = getType(base);
         Type amountType = getType(amount);
         put(node, baseType.index(amountType));
@@ -274,8 +354,8 @@ public class TypeChecker implements CommandVisitor {
     public void visit(Assignment node) {
         Command destination = (Command) node.destination();
         Command source = (Command) node.source();
-        check(destination);
-        check(source);
+        if (descend(destination, source))
+            return;
         Type destType = getType(destination);
         put(node, destType.assign(getType(source)));
     }
@@ -283,7 +363,8 @@ public class TypeChecker implements CommandVisitor {
     @Override
     public void visit(Call node) {
         Command arguments = node.arguments();
-        check(arguments);
+        if (descend(arguments))
+            return;
         Type type = node.function().type().call(getType(arguments));
         put(node, type);
     }
@@ -291,46 +372,54 @@ public class TypeChecker implements CommandVisitor {
     @Override
     public void visit(IfElseBranch node) {
         Command condition = (Command) node.condition();
-        check(condition);
+        Command thenBlock = node.thenBlock();
+        Command elseBlock = node.elseBlock();
+        switch (traversal.phase()) {
+            case 0:
+                traversal.descend(condition);
+                return;
+            case 1:
+                Type condType = getType(condition);
+                if (!(condType instanceof BoolType)) {
+                    put(node, new ErrorType("IfElseBranch requires bool condition not " + condType + "."));
+                    return;
+                }
+                traversal.descend(thenBlock);
+                return;
+            case 2:
+                traversal.descend(elseBlock);
+                return;
+        }
 
         Type type;
-        Type condType = getType(condition);
-        if (getType((Command) node.condition()) instanceof BoolType) {
-            Command thenBlock = node.thenBlock();
-            Command elseBlock = node.elseBlock();
-            check(thenBlock);
-            check(elseBlock);
-
-            if (getType(thenBlock) instanceof VoidType || getType(elseBlock) instanceof VoidType)
-                type = new VoidType();
-            else
-                type = getType(thenBlock); // either one should be fine
-        } else {
-            type = new ErrorType("IfElseBranch requires bool condition not " + condType + ".");
-        }
+        if (getType(thenBlock) instanceof VoidType || getType(elseBlock) instanceof VoidType)
+            type = VoidType.INSTANCE;
+        else
+            type = getType(thenBlock); // either one should be fine
         put(node, type);
     }
 
     @Override
     public void visit(WhileLoop node) {
         Command condition = (Command) node.condition();
-        check(condition);
+        if (descend(condition, node.body()))
+            return;
 
         Type type;
-        Type condType = getType((Command) node.condition());
-        if (getType((Command) node.condition()) instanceof BoolType) {
-            type = new VoidType();
+        Type condType = getType(condition);
+        if (condType instanceof BoolType) {
+            type = VoidType.INSTANCE;
         } else {
             type = new ErrorType("WhileLoop requires bool condition not " + condType + ".");
         }
-        check(node.body());
         put(node, type);
     }
 
     @Override
     public void visit(Return node) {
         Command argument = (Command) node.argument();
-        check(argument);
+        if (descend(argument))
+            return;
         Type actualReturnType = getType(argument);
         Type expectedReturnType = ((FuncType) currentFunction.type()).returnType();
 
@@ -348,4 +437,211 @@ public class TypeChecker implements CommandVisitor {
     public void visit(ast.Error node) {
         put(node, new ErrorType(node.message()));
     }
+
+// Flat Trees ==========================================
+    private void put(FlatTree tree, int id, Type type)
+    {
+        if (type instanceof ErrorType)
+            reportError(tree.lineNumber(id), tree.charPosition(id), ((ErrorType) type).getMessage());
+        typesById[id] = type;
+    }
+
+    /* One step of node id, as the visit of its kind takes it: finished is
+     * the child checked last, NONE the first time. Returns the child to
+     * check next, or NONE once the node is done.
+     */
+    private int check(FlatTree tree, int id, int finished)
+    {
+        int first = tree.firstChild(id);
+        switch (tree.kind(id)) {
+            case STATEMENT_LIST:
+                if (finished == FlatTree.NONE) {
+                    typesById[id] = VoidType.INSTANCE;
+                    return first;
+                }
+                if (!(typesById[finished] instanceof VoidType))
+                    typesById[id] = typesById[finished];
+                return tree.nextSibling(finished);
+            case FUNCTION_DEFINITION:
+                return checkFunction(tree, id, finished);
+            case IF_ELSE_BRANCH:
+                if (finished == FlatTree.NONE)
+                    return first;
+                if (finished != first)
+                    return checkBranches(tree, id, finished);
+                Type condType = typesById[first];
+                if (!(condType instanceof BoolType)) {
+                    put(tree, id, new ErrorType("IfElseBranch requires bool condition not " + condType + "."));
+                    return FlatTree.NONE;
+                }
+                return tree.nextSibling(first);
+            default:
+                break;
+        }
+
+        int next = finished == FlatTree.NONE ? first : tree.nextSibling(finished);
+        if (next != FlatTree.NONE)
+            return next;
+        Type left = first == FlatTree.NONE ? null : typesById[first];
+        Type right = first == FlatTree.NONE || tree.nextSibling(first) == FlatTree.NONE
+                ? null : typesById[tree.nextSibling(first)];
+        switch (tree.kind(id)) {
+            case DECLARATION_LIST:
+                break;
+            case EXPRESSION_LIST: {
+                int count = 0;
+                for (int child = first; child != FlatTree.NONE; child = tree.nextSibling(child))
+                    count++;
+                Type[] types = new Type[count];
+                count = 0;
+                for (int child = first; child != FlatTree.NONE; child = tree.nextSibling(child))
+                    types[count++] = typesById[child];
+                put(tree, id, TypeList.of(types));
+                break;
+            }
+            case ADDRESS_OF:
+                put(tree, id, tree.symbol(id).type().deref());
+                break;
+            case LITERAL_BOOL:
+                put(tree, id, BoolType.INSTANCE);
+                break;
+            case LITERAL_FLOAT:
+                put(tree, id, FloatType.INSTANCE);
+                break;
+            case LITERAL_INT:
+                put(tree, id, IntType.INSTANCE);
+                break;
+            case VARIABLE_DECLARATION: {
+                Symbol symbol = tree.symbol(id);
+                Type type = symbol.type();
+                if (type instanceof ErrorType || type instanceof VoidType)
+                    put(tree, id, new ErrorType("Variable " + symbol.name() + " has invalid type " + type + "."));
+                else
+                    put(tree, id, VoidType.INSTANCE);
+                break;
+            }
+            case ARRAY_DECLARATION: {
+                Symbol symbol = tree.symbol(id);
+                Type invalidBase = ((ArrayType) symbol.type()).isInvalid();
+                if (invalidBase != null)
+                    put(tree, id, new ErrorType("Array " + symbol.name() + " has invalid base type " + invalidBase + "."));
+                else
+                    put(tree, id, symbol.type());
+                break;
+            }
+            case COMPARISON:
+                put(tree, id, left.compare(right));
+                break;
+            case ADDITION:
+                put(tree, id, left.add(right));
+                break;
+            case SUBTRACTION:
+                put(tree, id, left.sub(right));
+                break;
+            case MULTIPLICATION:
+                put(tree, id, left.mul(right));
+                break;
+            case DIVISION:
+                put(tree, id, left.div(right));
+                break;
+            case LOGICAL_AND:
+                put(tree, id, left.and(right));
+                break;
+            case LOGICAL_OR:
+                put(tree, id, left.or(right));
+                break;
+            case LOGICAL_NOT:
+                put(tree, id, left.not());
+                break;
+            case DEREFERENCE:
+                put(tree, id, left.deref());
+                break;
+            case INDEX:
+                put(tree, id, left.index(right));
+                break;
+            case ASSIGNMENT:
+                put(tree, id, left.assign(right));
+                break;
+            case CALL:
+                put(tree, id, tree.symbol(id).type().call(left));
+                break;
+            case WHILE_LOOP:
+                if (left instanceof BoolType)
+                    put(tree, id, VoidType.INSTANCE);
+                else
+                    put(tree, id, new ErrorType("WhileLoop requires bool condition not " + left + "."));
+                break;
+            case RETURN:
+                checkReturn(tree, id, left);
+                break;
+            case ERROR:
+                put(tree, id, new ErrorType(tree.message(id)));
+                break;
+            default:
+                throw new IllegalArgumentException("Node " + id + " is a " + tree.kind(id) + ", which is not checked on its own.");
+        }
+        return FlatTree.NONE;
+    }
+
+    private int checkFunction(FlatTree tree, int id, int finished)
+    {
+        if (finished != FlatTree.NONE) {
+            Type expectedReturnType = ((FuncType) currentFunction.type()).returnType();
+            Type actualReturnType = typesById[finished];
+            if (!(expectedReturnType instanceof VoidType) && actualReturnType instanceof VoidType) {
+                put(tree, id, new ErrorType("Not all paths in function " +
+                        currentFunction.name() + " have a return."));
+            }
+            typesById[id] = actualReturnType;
+            return FlatTree.NONE;
+        }
+
+        currentFunction = tree.symbol(id);
+        Type expectedReturnType = ((FuncType) currentFunction.type()).returnType();
+        if (currentFunction.name().equals("main") && !(expectedReturnType instanceof VoidType)) {
+            put(tree, id, new ErrorType("Function main has invalid signature."));
+            return FlatTree.NONE;
+        }
+        int child = tree.firstChild(id);
+        for (int i = 0; tree.kind(child) == FlatTree.NodeKind.ARGUMENT; i++, child = tree.nextSibling(child)) {
+            Type type = tree.symbol(child).type();
+            if (type instanceof VoidType) {
+                put(tree, id, new ErrorType("Function " + currentFunction.name() +
+                        " has a void argument in position " + i + "."));
+                return FlatTree.NONE;
+            } else if (type instanceof ErrorType) {
+                put(tree, id, new ErrorType("Function " + currentFunction.name() +
+                        " has an error in argument in position " + i + ": " + ((ErrorType) type).getMessage()));
+                return FlatTree.NONE;
+            }
+        }
+        return child;
+    }
+
+    // after the then block, the else block, then the type of the branch
+    private int checkBranches(FlatTree tree, int id, int finished)
+    {
+        int next = tree.nextSibling(finished);
+        if (next != FlatTree.NONE)
+            return next;
+        int thenBlock = tree.nextSibling(tree.firstChild(id));
+        Type thenType = typesById[thenBlock];
+        if (thenType instanceof VoidType || typesById[finished] instanceof VoidType)
+            put(tree, id, VoidType.INSTANCE);
+        else
+            put(tree, id, thenType);
+        return FlatTree.NONE;
+    }
+
+    private void checkReturn(FlatTree tree, int id, Type actualReturnType)
+    {
+        Type expectedReturnType = ((FuncType) currentFunction.type()).returnType();
+        if (!actualReturnType.equivalent(expectedReturnType)) {
+            put(tree, id, new ErrorType("Function " + currentFunction.name() +
+                    " returns " + expectedReturnType  + " not " +
+                    actualReturnType+ "."));
+        } else {
+            put(tree, id, actualReturnType);
+        }
+    }
 }
@@ -0,0 +1,140 @@
+package types;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/* Keeps one instance of every structured type.
+ *
+ * The base types are singletons, so a type is canonical once its parts are,
+ * and the parts of a key are compared by reference. Two types are then
+ * structurally equivalent exactly when they are the same object, except for
+ * ErrorTypes, which are not interned and compare by message.
+ *
+ * A type that is or holds an ErrorType is made anew every time and never
+ * enters the table: each ErrorType is its own object, so such an entry
+ * could never be found again and would only keep its error alive. The
+ * table thus holds only types a program has declared or computed without
+ * errors, however many programs are compiled.
+ *
+ * Parsers running on several threads share the one table.
+ */
+final class TypeInterner {
+
+    private static final int ADDRESS = 0, ARRAY = 1, FUNC = 2, LIST = 3;
+
+    private static final ConcurrentHashMap<Key, Type> types = new ConcurrentHashMap<Key, Type>();
+
+    private TypeInterner() { }
+
+    static AddressType address(Type base)
+    {
+        Key key = new Key(ADDRESS, 0, base);
+        Type type = find(key);
+        return (AddressType) (type != null ? type : add(key, new AddressType(base)));
+    }
+
+    static ArrayType array(int extent, Type base)
+    {
+        Key key = new Key(ARRAY, extent, base);
+        Type type = find(key);
+        return (ArrayType) (type != null ? type : add(key, new ArrayType(extent, base)));
+    }
+
+    static FuncType func(TypeList arguments, Type returnType)
+    {
+        Key key = new Key(FUNC, 0, arguments, returnType);
+        Type type = find(key);
+        return (FuncType) (type != null ? type : add(key, new FuncType(arguments, returnType)));
+    }
+
+    // items is kept by the list
+    static TypeList list(Type[] items)
+    {
+        Key key = new Key(LIST, 0, items);
+        Type type = find(key);
+        return (TypeList) (type != null ? type : add(key, new TypeList(items)));
+    }
+
+    // the number of types kept
+    static int size()
+    {
+        return types.size();
+    }
+
+    private static Type find(Key key)
+    {
+        return key.holdsError ? null : types.get(key);
+    }
+
+    // type, or the equal one another thread added first
+    private static Type add(Key key, Type type)
+    {
+        if (key.holdsError)
+            return type;
+        Type first = types.putIfAbsent(key, type);
+        return first != null ? first : type;
+    }
+
+    private static boolean holdsError(Type type)
+    {
+        if (type instanceof ErrorType)
+            return true;
+        if (type instanceof AddressType)
+            return holdsError(((AddressType) type).base());
+        if (type instanceof ArrayType)
+            return holdsError(((ArrayType) type).base());
+        if (type instanceof FuncType)
+            return holdsError(((FuncType) type).arguments()) || holdsError(((FuncType) type).returnType());
+        if (type instanceof TypeList) {
+            for (Type item : (TypeList) type) {
+                if (holdsError(item))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Key {
+        final int kind;
+        final int extent;
+        final Type[] parts;
+        final int hash;
+        final boolean holdsError;
+
+        Key(int kind, int extent, Type... parts)
+        {
+            this.kind = kind;
+            this.extent = extent;
+            this.parts = parts;
+            int h = kind * 31 + extent;
+            boolean error = false;
+            for (Type part : parts) {
+                h = h * 31 + System.identityHashCode(part);
+                error |= holdsError(part);
+            }
+            hash = h;
+            holdsError = error;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if (!(other instanceof Key))
+                return false;
+            Key that = (Key) other;
+            if (hash != that.hash || kind != that.kind || extent != that.extent
+                    || parts.length != that.parts.length)
+                return false;
+            for (int i = 0; i < parts.length; i++) {
+                if (parts[i] != that.parts[i])
+                    return false;
+            }
+            return true;
+        }
+    }
+}
@@ -1,21 +1,26 @@
 package types;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
 public class TypeList extends Type implements Iterable<Type> {
     
-    private List<Type> list;
-    
-    public TypeList()
+    public static TypeList of(Type... types)
+    {
+        return TypeInterner.list(types.clone());
+    }
+
+    public static TypeList of(List<Type> types)
     {
-        list = new ArrayList<Type>();
+        return TypeInterner.list(types.toArray(new Type[types.size()]));
     }
+
+    private final List<Type> list;
     
-    public void append(Type type)
+    TypeList(Type[] types)
     {
-        list.add(type);
+        list = Arrays.asList(types);
     }
     
     @Override
@@ -31,6 +36,11 @@ public class TypeList extends Type implements Iterable<Type> {
         return sb.toString();
     }
 
+    public int size()
+    {
+        return list.size();
+    }
+
     public boolean containsArrayType() {
         for (Type type : list) {
             if (type instanceof ArrayType)
@@ -40,26 +50,6 @@ public class TypeList extends Type implements Iterable<Type> {
         return false;
     }
 
-    @Override
-    public boolean equivalent(Type that) {
-        if (that == null)
-            return false;
-        if (!(that instanceof TypeList))
-            return false;
-        
-        List<Type> olist = ((TypeList)that).list;
-        
-        if (list.size() != olist.size())
-            return false;
-        
-        for (int i=0; i<list.size(); ++i)
-        {
-            if (!list.get(i).equivalent(olist.get(i)))
-                return false;
-        }
-        return true;
-    }
-    
     @Override
     public Iterator<Type> iterator()
     {
@@ -2,7 +2,9 @@ package types;
 
 public class VoidType extends Type {
     
-    public VoidType()
+    public static final VoidType INSTANCE = new VoidType();
+
+    private VoidType()
     {
     }
 
@@ -11,14 +13,4 @@ public class VoidType extends Type {
     {
         return "void";
     }
-    
-    @Override
-    public boolean equivalent(Type that)
-    {
-        if (that == null)
-            return false;
-        if (!(that instanceof VoidType))
-            return false;
-        return true;
-    }
 }